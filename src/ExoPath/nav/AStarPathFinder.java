@@ -0,0 +1,268 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import org.newdawn.slick.util.pathfinding.Path;
+import org.newdawn.slick.util.pathfinding.PathFinder;
+import org.newdawn.slick.util.pathfinding.PathFinderMap;
+
+/**
+ * A path finder implementation that uses the A* algorithm to determine a single path
+ * from a source to a target location (point to point query). The heuristic is the octile
+ * distance plus the minimum cell cost for each step, which never overestimates the path cost
+ * (the cost of a step is the step distance plus the cost of the entered cell), so the paths
+ * are as good as the Dijkstra paths while far fewer cells are expanded.
+ * The search state is kept in flat arrays indexed by the cell index y*width+x.
+ */
+public class AStarPathFinder extends PathFinder {
+
+	/** The queue of the open cells (ordered by path cost plus heuristic). */
+	private final CellQueue open;
+
+	/** The path cost of the reached cells. */
+	protected final float[] pathCost;
+
+	/** The parent cell of the reached cells (-1 for the source). */
+	protected final int[] parent;
+
+	/** The cells reached by the last search. */
+	protected final CellSet reached;
+
+	/** The cells expanded by the last search. */
+	protected final CellSet closed;
+
+	/** The minimum cell cost used by the heuristic. */
+	private float minCost = 0;
+
+	/** The map version of the minimum cell cost (-1 if not computed). */
+	private int minCostVersion = -1;
+
+	/**
+	 * Create a path finder.
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diagonal movement
+	 */
+	public AStarPathFinder(PathFinderMap map, boolean allowDiagMovement) {
+
+		this(map, allowDiagMovement, new HeapCellQueue(map.getWidth() * map.getHeight()));
+	}
+
+	/**
+	 * Create a path finder with a given cell queue.
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diagonal movement
+	 * @param open The queue of the open cells (for all map cells)
+	 */
+	public AStarPathFinder(PathFinderMap map, boolean allowDiagMovement, CellQueue open) {
+
+		super(map, Integer.MAX_VALUE, allowDiagMovement);
+		this.open = open;
+
+		int size = map.getWidth() * map.getHeight();
+		pathCost = new float[size];
+		parent = new int[size];
+		reached = new CellSet(size);
+		closed = new CellSet(size);
+	}
+
+	/**
+	 * Returns the path from a source to a target location.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the path or null if the target isn't reachable
+	 * @see PathFinder#findPath(int, int, int, int)
+	 */
+	@Override
+	public Path findPath(int sx, int sy, int tx, int ty) {
+
+		int w = map.getWidth();
+		reached.clear();
+		closed.clear();
+		open.clear();
+
+		// easy first check, if the source or destination is blocked, we can't get there
+		if (!isValidLocation(sx, sy) || !isValidLocation(tx, ty))
+			return null;
+
+		updateMinCost();
+		int src = sy * w + sx;
+		int dst = ty * w + tx;
+		reached.add(src);
+		pathCost[src] = 0;
+		parent[src] = -1;
+		open.update(src, heuristic(sx, sy, tx, ty));
+
+		while (!open.isEmpty()) {
+
+			int cell = open.poll();
+			closed.add(cell);
+			map.pathFinderVisited(cell % w, cell / w);
+			if (cell == dst)
+				return getPath(src, dst);
+
+			expand(cell, tx, ty);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Expands a cell: all neighbors are evaluated.
+	 *
+	 * @param cell the cell index
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 */
+	protected void expand(int cell, int tx, int ty) {
+
+		int w = map.getWidth();
+		int cx = cell % w;
+		int cy = cell / w;
+		for (int x = -1; x < 2; x++) {
+			for (int y = -1; y < 2; y++) {
+
+				if ((x == 0) && (y == 0))
+					continue;
+				if (!allowDiagMovement && (x != 0) && (y != 0))
+					continue;
+
+				int xp = cx + x;
+				int yp = cy + y;
+				if (isValidLocation(xp, yp))
+					relax(cell, xp, yp, pathCost[cell] + getDist(cx, cy, xp, yp) + map.getCost(cx, cy, xp, yp), tx, ty);
+			}
+		}
+	}
+
+	/**
+	 * Updates the path to a cell if the new path is cheaper.
+	 *
+	 * @param cell the parent cell index
+	 * @param x the x coordinate of the cell to update
+	 * @param y the y coordinate of the cell to update
+	 * @param cost the path cost of the cell through the parent cell
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 */
+	protected final void relax(int cell, int x, int y, float cost, int tx, int ty) {
+
+		int n = y * map.getWidth() + x;
+		if (closed.contains(n))
+			return;
+		if (reached.add(n) || cost < pathCost[n]) {
+			pathCost[n] = cost;
+			parent[n] = cell;
+			open.update(n, cost + heuristic(x, y, tx, ty));
+		}
+	}
+
+	/**
+	 * The heuristic: a lower bound of the path cost from a cell to the target.
+	 * With diagonal movement it's the octile distance plus the minimum cell cost
+	 * for each of the (at least) max(dx, dy) steps, otherwise the manhattan distance
+	 * plus the minimum cell cost for each step.
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the heuristic path cost
+	 */
+	protected float heuristic(int x, int y, int tx, int ty) {
+
+		int dx = Math.abs(tx - x);
+		int dy = Math.abs(ty - y);
+		if (!allowDiagMovement)
+			return (dx + dy) * (1 + minCost);
+
+		int min = Math.min(dx, dy);
+		int max = Math.max(dx, dy);
+		return (max - min) + min * (float) Math.sqrt(2) + max * minCost;
+	}
+
+	/**
+	 * Updates the minimum cell cost of the map for the heuristic (only for a new map version).
+	 * For maps without cost plane the cell cost is assumed to be at least 0.
+	 */
+	private void updateMinCost() {
+
+		if (!(map instanceof Map)) {
+			minCost = 0;
+			return;
+		}
+
+		Map m = (Map) map;
+		if (m.getVersion() == minCostVersion)
+			return;
+
+		float min = TerrainCostModel.BLOCKED;
+		for (float c : m.getCostPlane())
+			if (c < min)
+				min = c;
+		minCost = min == TerrainCostModel.BLOCKED ? 0 : min;
+		minCostVersion = m.getVersion();
+	}
+
+	/**
+	 * Gets the path by following the parent references from the target to the source,
+	 * the cells between a cell and its parent (on a straight or diagonal line) are added.
+	 *
+	 * @param src the source cell index
+	 * @param dst the target cell index
+	 * @return the path
+	 */
+	private Path getPath(int src, int dst) {
+
+		int w = map.getWidth();
+		Path path = new Path();
+		for (int cell = dst; cell != src; cell = parent[cell]) {
+			int x = cell % w;
+			int y = cell / w;
+			int px = parent[cell] % w;
+			int py = parent[cell] / w;
+			int dx = Integer.signum(px - x);
+			int dy = Integer.signum(py - y);
+			for (; x != px || y != py; x += dx, y += dy)
+				path.prependStep(x, y);
+		}
+		path.prependStep(src % w, src / w);
+
+		return path;
+	}
+
+	/**
+	 * Gets the path cost of a cell from the last search.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the path cost value (Float.MAX_VALUE if the cell was not reached)
+	 */
+	public float getPathCost(int x, int y) {
+		int cell = y * map.getWidth() + x;
+		return reached.contains(cell) ? pathCost[cell] : Float.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the number of cells expanded by the last search.
+	 *
+	 * @return the number of expanded cells
+	 */
+	public int getExpanded() {
+		return closed.size();
+	}
+}
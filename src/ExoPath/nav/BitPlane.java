@@ -0,0 +1,303 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.Arrays;
+
+/**
+ * A binary grid as bitset, one bit per cell and each row starting with a new long word
+ * (the bit x%64 of the word x/64 of the row). The flood fill and the morphology work on
+ * whole words where possible and do not create any objects (the span stack of the fill
+ * grows geometrically and is then kept). Cells outside of the grid are not set.
+ */
+public class BitPlane {
+
+	/** The grid width. */
+	private final int width;
+
+	/** The grid height. */
+	private final int height;
+
+	/** The number of words per row. */
+	private final int stride;
+
+	/** The bits of the cells. */
+	private final long[] bits;
+
+	/** The mask of the valid bits of the last word of a row. */
+	private final long tail;
+
+	/** The horizontally dilated previous row (for the contour). */
+	private final long[] prev;
+
+	/** The horizontally dilated current row (for the contour). */
+	private final long[] curr;
+
+	/** The span stack of the flood fill (cell indices y*width+x). */
+	private int[] stack = new int[64];
+
+	/**
+	 * Instantiates a new bit plane with all cells cleared.
+	 *
+	 * @param width the grid width
+	 * @param height the grid height
+	 */
+	public BitPlane(int width, int height) {
+
+		this.width = width;
+		this.height = height;
+		stride = (width + 63) >>> 6;
+		bits = new long[stride * height];
+		tail = -1L >>> (-width & 63);
+		prev = new long[stride];
+		curr = new long[stride];
+	}
+
+	/**
+	 * Clears all cells.
+	 */
+	public void clear() {
+		Arrays.fill(bits, 0);
+	}
+
+	/**
+	 * Checks if a cell is set.
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @return true, if the cell is set
+	 */
+	public boolean get(int x, int y) {
+		return (bits[y * stride + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Sets a cell.
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 */
+	public void set(int x, int y) {
+		bits[y * stride + (x >>> 6)] |= 1L << x;
+	}
+
+	/**
+	 * Sets the cells of a part of a row.
+	 *
+	 * @param y the row
+	 * @param x0 the first column
+	 * @param x1 the column after the last one
+	 */
+	private void set(int y, int x0, int x1) {
+
+		int o = y * stride;
+		int k0 = x0 >>> 6, k1 = (x1 - 1) >>> 6;
+		long first = -1L << x0;
+		long last = -1L >>> (-x1 & 63);
+		if (k0 == k1) {
+			bits[o + k0] |= first & last;
+			return;
+		}
+		bits[o + k0] |= first;
+		for (int k = k0 + 1; k < k1; k++)
+			bits[o + k] = -1L;
+		bits[o + k1] |= last;
+	}
+
+	/**
+	 * Gets the first column of a row, which is not set in both planes (a free cell).
+	 *
+	 * @param barrier the other plane
+	 * @param y the row
+	 * @param x the first column to check
+	 * @param end the column after the last one to check
+	 * @return the free column or end if there is none
+	 */
+	private int nextFree(BitPlane barrier, int y, int x, int end) {
+
+		int o = y * stride;
+		while (x < end) {
+			int k = x >>> 6;
+			long m = ~(bits[o + k] | barrier.bits[o + k]) & (-1L << x);
+			if (m != 0)
+				return Math.min(end, (k << 6) + Long.numberOfTrailingZeros(m));
+			x = (k + 1) << 6;
+		}
+		return end;
+	}
+
+	/**
+	 * Gets the first column of a row, which is set in one of the planes (a taken cell).
+	 *
+	 * @param barrier the other plane
+	 * @param y the row
+	 * @param x the first column to check
+	 * @param end the column after the last one to check
+	 * @return the taken column or end if there is none
+	 */
+	private int nextTaken(BitPlane barrier, int y, int x, int end) {
+
+		int o = y * stride;
+		while (x < end) {
+			int k = x >>> 6;
+			long m = (bits[o + k] | barrier.bits[o + k]) & (-1L << x);
+			if (m != 0)
+				return Math.min(end, (k << 6) + Long.numberOfTrailingZeros(m));
+			x = (k + 1) << 6;
+		}
+		return end;
+	}
+
+	/**
+	 * Gets the last column of a row before the given one, which is set in one of the planes.
+	 *
+	 * @param barrier the other plane
+	 * @param y the row
+	 * @param x the column after the columns to check
+	 * @return the taken column or -1 if there is none
+	 */
+	private int prevTaken(BitPlane barrier, int y, int x) {
+
+		int o = y * stride;
+		while (x > 0) {
+			int k = (x - 1) >>> 6;
+			long m = (bits[o + k] | barrier.bits[o + k]) & (-1L >>> (63 - ((x - 1) & 63)));
+			if (m != 0)
+				return (k << 6) + 63 - Long.numberOfLeadingZeros(m);
+			x = k << 6;
+		}
+		return -1;
+	}
+
+	/**
+	 * Pushes the free spans of a row part to the span stack (one cell per span).
+	 *
+	 * @param barrier the cells not to fill
+	 * @param y the row
+	 * @param x0 the first column
+	 * @param x1 the column after the last one
+	 * @param n the stack size
+	 * @return the new stack size
+	 */
+	private int push(BitPlane barrier, int y, int x0, int x1, int n) {
+
+		if (y < 0 || y >= height)
+			return n;
+		for (int x = nextFree(barrier, y, x0, x1); x < x1; x = nextFree(barrier, y, nextTaken(barrier, y, x, x1), x1)) {
+			if (n == stack.length)
+				stack = Arrays.copyOf(stack, 2 * n);
+			stack[n++] = y * width + x;
+		}
+		return n;
+	}
+
+	/**
+	 * Flood fills the cells connected to a start cell (8-neighbourhood), which are not set
+	 * in the barrier plane. The start cell is set in any case. The fill works on spans:
+	 * a free cell is extended to the whole free run of its row, which is set at once,
+	 * and the free runs touching it in the rows above and below are pushed.
+	 *
+	 * @param x the x coordinate of the start cell
+	 * @param y the y coordinate of the start cell
+	 * @param barrier the cells not to fill (same size)
+	 */
+	public void fill(int x, int y, BitPlane barrier) {
+
+		int n;
+		if (barrier.get(x, y) && !get(x, y)) {
+			// the start cell within the barrier just passes the fill to its neighbours
+			set(x, y);
+			n = push(barrier, y - 1, Math.max(0, x - 1), Math.min(width, x + 2), 0);
+			n = push(barrier, y, Math.max(0, x - 1), Math.min(width, x + 2), n);
+			n = push(barrier, y + 1, Math.max(0, x - 1), Math.min(width, x + 2), n);
+		}
+		else {
+			stack[0] = y * width + x;
+			n = 1;
+		}
+
+		while (n > 0) {
+			int cell = stack[--n];
+			int cx = cell % width;
+			int cy = cell / width;
+			if (get(cx, cy) || barrier.get(cx, cy))
+				continue; // filled by another span
+
+			// the free run of the row
+			int x0 = prevTaken(barrier, cy, cx) + 1;
+			int x1 = nextTaken(barrier, cy, cx, width);
+			set(cy, x0, x1);
+
+			// the free runs touching it (with the diagonal neighbours)
+			n = push(barrier, cy - 1, Math.max(0, x0 - 1), Math.min(width, x1 + 1), n);
+			n = push(barrier, cy + 1, Math.max(0, x0 - 1), Math.min(width, x1 + 1), n);
+		}
+	}
+
+	/**
+	 * Sets the contour of another plane: the cells which are not set there, but have
+	 * a set neighbour (8-neighbourhood), i.e. the 3x3 dilation minus the source.
+	 * The dilation shifts whole words (with the carries of the neighbour words).
+	 *
+	 * @param src the source plane (same size, not this plane)
+	 */
+	public void contour(BitPlane src) {
+
+		Arrays.fill(prev, 0);
+		dilateRow(src, 0, curr);
+		for (int y = 0; y < height; y++) {
+			int o = y * stride;
+			for (int k = 0; k < stride; k++) {
+				long next = y + 1 < height ? dilateWord(src, y + 1, k) : 0;
+				long c = curr[k];
+				bits[o + k] = (prev[k] | c | next) & ~src.bits[o + k];
+				prev[k] = c;
+				curr[k] = next;
+			}
+		}
+	}
+
+	/**
+	 * Dilates a row horizontally.
+	 *
+	 * @param src the source plane
+	 * @param y the row
+	 * @param dst the dilated words
+	 */
+	private void dilateRow(BitPlane src, int y, long[] dst) {
+		for (int k = 0; k < stride; k++)
+			dst[k] = dilateWord(src, y, k);
+	}
+
+	/**
+	 * Dilates a word of a row horizontally (a cell is set if it or a left or right neighbour is set).
+	 *
+	 * @param src the source plane
+	 * @param y the row
+	 * @param k the word index within the row
+	 * @return the dilated word
+	 */
+	private long dilateWord(BitPlane src, int y, int k) {
+
+		int o = y * stride;
+		long w = src.bits[o + k];
+		long d = w | (w << 1) | (w >>> 1);
+		if (k > 0)
+			d |= src.bits[o + k - 1] >>> 63;
+		if (k + 1 < stride)
+			d |= src.bits[o + k + 1] << 63;
+		else
+			d &= tail;
+		return d;
+	}
+}
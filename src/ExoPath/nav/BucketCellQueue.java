@@ -0,0 +1,200 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.Arrays;
+
+/**
+ * A cell queue with buckets of a fixed key width (Dial's algorithm) for monotone searches:
+ * the key of a new or decreased cell must not be lower than the key of the last polled cell,
+ * as it is for Dijkstra with non negative edge costs (before the first poll the keys can be
+ * in any order, e.g. for several start cells). The buckets are used as a ring covering
+ * the key range from the last polled key to the maximum edge cost, the ring grows if
+ * the edge costs are larger than expected. Within a bucket the cells are kept in a doubly
+ * linked list, so adding and decreasing a key are O(1). The lowest key of the current bucket
+ * is searched when polling, which keeps the order exact.
+ */
+public class BucketCellQueue implements CellQueue {
+
+	/** The key width of a bucket. */
+	private final float width;
+
+	/** The first cell of each bucket of the ring (-1 if empty). */
+	private int[] head;
+
+	/** The next cell within the bucket list. */
+	private final int[] next;
+
+	/** The previous cell within the bucket list (-1 for the first one). */
+	private final int[] prev;
+
+	/** The absolute bucket index of each cell (-1 if not queued). */
+	private final int[] bucket;
+
+	/** The key of each cell. */
+	private final float[] key;
+
+	/** The absolute index of the current (lowest) bucket. */
+	private int current = 0;
+
+	/** The highest absolute bucket index in use (an upper bound). */
+	private int top = 0;
+
+	/** The flag if a cell was polled since the queue was cleared. */
+	private boolean polled = false;
+
+	/** The number of queued cells. */
+	private int size = 0;
+
+	/**
+	 * Instantiates a new bucket cell queue.
+	 *
+	 * @param capacity the number of grid cells
+	 * @param width the key width of a bucket
+	 * @param maxCost the expected maximum edge cost (the initial key range of the ring)
+	 */
+	public BucketCellQueue(int capacity, float width, float maxCost) {
+
+		this.width = width;
+		head = new int[(int) Math.ceil(maxCost / width) + 2];
+		next = new int[capacity];
+		prev = new int[capacity];
+		bucket = new int[capacity];
+		key = new float[capacity];
+		Arrays.fill(head, -1);
+		Arrays.fill(bucket, -1);
+	}
+
+	@Override
+	public void clear() {
+
+		for (int b = 0; b < head.length; b++) {
+			for (int c = head[b]; c >= 0; c = next[c])
+				bucket[c] = -1;
+			head[b] = -1;
+		}
+		current = 0;
+		top = 0;
+		size = 0;
+		polled = false;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean contains(int cell) {
+		return bucket[cell] >= 0;
+	}
+
+	@Override
+	public void update(int cell, float k) {
+
+		int b = (int) (k / width);
+		if (size == 0)
+			current = top = b; // the first cell defines the key range
+		else if (b < current) {
+			if (polled)
+				b = current; // rounding of a key equal to the current one
+			else
+				current = b; // a lower start cell
+		}
+		top = Math.max(top, b);
+
+		key[cell] = k;
+		if (bucket[cell] == b)
+			return;
+		if (bucket[cell] >= 0)
+			unlink(cell);
+		else
+			size++;
+
+		if (top - current >= head.length)
+			grow(top - current + 1);
+		link(cell, b);
+	}
+
+	@Override
+	public int poll() {
+
+		polled = true;
+
+		// the next non empty bucket
+		while (head[current % head.length] < 0)
+			current++;
+
+		// the lowest key within the bucket
+		int best = head[current % head.length];
+		for (int c = next[best]; c >= 0; c = next[c])
+			if (key[c] < key[best])
+				best = c;
+
+		unlink(best);
+		bucket[best] = -1;
+		size--;
+		return best;
+	}
+
+	/**
+	 * Adds a cell to a bucket list.
+	 *
+	 * @param cell the cell index
+	 * @param b the absolute bucket index
+	 */
+	private void link(int cell, int b) {
+
+		int r = b % head.length;
+		bucket[cell] = b;
+		prev[cell] = -1;
+		next[cell] = head[r];
+		if (head[r] >= 0)
+			prev[head[r]] = cell;
+		head[r] = cell;
+	}
+
+	/**
+	 * Removes a cell from its bucket list.
+	 *
+	 * @param cell the cell index
+	 */
+	private void unlink(int cell) {
+
+		if (prev[cell] >= 0)
+			next[prev[cell]] = next[cell];
+		else
+			head[bucket[cell] % head.length] = next[cell];
+		if (next[cell] >= 0)
+			prev[next[cell]] = prev[cell];
+	}
+
+	/**
+	 * Enlarges the bucket ring and redistributes the queued cells.
+	 *
+	 * @param n the minimum number of buckets
+	 */
+	private void grow(int n) {
+
+		int[] old = head;
+		head = new int[Math.max(n, 2 * old.length)];
+		Arrays.fill(head, -1);
+		for (int r = 0; r < old.length; r++) {
+			for (int c = old[r]; c >= 0; ) {
+				int nc = next[c];
+				link(c, bucket[c]);
+				c = nc;
+			}
+		}
+	}
+}
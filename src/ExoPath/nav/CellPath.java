@@ -0,0 +1,184 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import org.newdawn.slick.util.pathfinding.Path;
+
+/**
+ * A compact path as the sequence of the map cells from the source to the target
+ * (cell index y*width+x), kept in a reusable buffer. Filling the path again does not
+ * create any objects as long as the buffer is large enough (it grows geometrically).
+ */
+public class CellPath {
+
+	/** The cell indices of the steps. */
+	private int[] cells;
+
+	/** The number of steps. */
+	private int length = 0;
+
+	/** The map width used for the cell indices. */
+	private int width = 1;
+
+	/**
+	 * Instantiates a new empty path.
+	 */
+	public CellPath() {
+		cells = new int[64];
+	}
+
+	/**
+	 * Removes all steps.
+	 */
+	public void clear() {
+		length = 0;
+	}
+
+	/**
+	 * Sets the path from a parent array, each reached cell has the index of its predecessor.
+	 *
+	 * @param parent the predecessor of each cell
+	 * @param source the source cell
+	 * @param target the target cell (reached from the source)
+	 * @param width the map width
+	 */
+	public void set(int[] parent, int source, int target, int width) {
+
+		this.width = width;
+		int n = 1;
+		for (int cell = target; cell != source; cell = parent[cell])
+			n++;
+		ensureCapacity(n);
+
+		length = n;
+		for (int cell = target; n > 0; cell = parent[cell])
+			cells[--n] = cell;
+	}
+
+	/**
+	 * Sets the path from the steps of a path finder path.
+	 *
+	 * @param path the path
+	 * @param width the map width
+	 */
+	public void set(Path path, int width) {
+
+		this.width = width;
+		ensureCapacity(path.getLength());
+		length = path.getLength();
+		for (int i = 0; i < length; i++)
+			cells[i] = path.getY(i) * width + path.getX(i);
+	}
+
+	/**
+	 * Copies the steps of another path.
+	 *
+	 * @param src the path to copy
+	 */
+	public void set(CellPath src) {
+
+		ensureCapacity(src.length);
+		System.arraycopy(src.cells, 0, cells, 0, src.length);
+		length = src.length;
+		width = src.width;
+	}
+
+	/**
+	 * Ensures the buffer capacity for the given number of steps (the steps are not kept).
+	 *
+	 * @param n the number of steps
+	 */
+	private void ensureCapacity(int n) {
+		if (n > cells.length)
+			cells = new int[Math.max(n, 2 * cells.length)];
+	}
+
+	/**
+	 * Gets the number of steps (including the source).
+	 *
+	 * @return the path length
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Gets the distance along the path (straight and diagonal steps).
+	 *
+	 * @return the path distance (in cells)
+	 */
+	public float getDist() {
+
+		float d = 0;
+		for (int i = 1; i < length; i++) {
+			int dx = getX(i) - getX(i - 1);
+			int dy = getY(i) - getY(i - 1);
+			d += (float) Math.sqrt(dx * dx + dy * dy);
+		}
+		return d;
+	}
+
+	/**
+	 * Gets the cell index of a step.
+	 *
+	 * @param i the step index
+	 * @return the cell index (y*width+x)
+	 */
+	public int getCell(int i) {
+		return cells[i];
+	}
+
+	/**
+	 * Gets the map column of a step.
+	 *
+	 * @param i the step index
+	 * @return the x coordinate of the cell
+	 */
+	public int getX(int i) {
+		return cells[i] % width;
+	}
+
+	/**
+	 * Gets the map row of a step.
+	 *
+	 * @param i the step index
+	 * @return the y coordinate of the cell
+	 */
+	public int getY(int i) {
+		return cells[i] / width;
+	}
+
+	/**
+	 * Gets the world x coordinate of a step (the center of the cell).
+	 *
+	 * @param i the step index
+	 * @param res the map resolution
+	 * @param originX the global grid column of the map cell 0,0
+	 * @return the world x coordinate
+	 */
+	public double getWorldX(int i, double res, int originX) {
+		return (originX + getX(i) + 0.5) * res;
+	}
+
+	/**
+	 * Gets the world y coordinate of a step (the center of the cell).
+	 *
+	 * @param i the step index
+	 * @param res the map resolution
+	 * @param originY the global grid row of the map cell 0,0
+	 * @return the world y coordinate
+	 */
+	public double getWorldY(int i, double res, int originY) {
+		return (originY + getY(i) + 0.5) * res;
+	}
+}
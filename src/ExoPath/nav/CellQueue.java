@@ -0,0 +1,56 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+/**
+ * A priority queue of grid cells (given by the cell index y*width+x) for the path search.
+ * Each cell is at most once in the queue, its key can be decreased while it is queued.
+ */
+public interface CellQueue {
+
+	/**
+	 * Removes all cells from the queue.
+	 */
+	public void clear();
+
+	/**
+	 * Checks if the queue is empty.
+	 *
+	 * @return true, if there is no cell in the queue
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * Checks if a cell is in the queue.
+	 *
+	 * @param cell the cell index
+	 * @return true, if the cell is in the queue
+	 */
+	public boolean contains(int cell);
+
+	/**
+	 * Adds a cell to the queue or decreases its key if it is already queued.
+	 * The key of a queued cell must not be increased.
+	 *
+	 * @param cell the cell index
+	 * @param key the key (the path cost)
+	 */
+	public void update(int cell, float key);
+
+	/**
+	 * Removes the cell with the lowest key from the queue.
+	 *
+	 * @return the cell index
+	 */
+	public int poll();
+}
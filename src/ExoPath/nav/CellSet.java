@@ -0,0 +1,112 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.Arrays;
+
+/**
+ * A set of grid cells (given by the cell index y*width+x) which can be cleared in constant time.
+ * Each cell has a generation stamp, a cell is part of the set if its stamp equals the current
+ * generation. Clearing the set just starts a new generation. The added cells are also kept in
+ * insertion order, so iterating over the set only touches the cells within it.
+ */
+public class CellSet {
+
+	/** The generation stamp for each cell. */
+	private final int[] stamp;
+
+	/** The current generation. */
+	private int gen = 1;
+
+	/** The cells of the set in insertion order. */
+	private final int[] cells;
+
+	/** The number of cells in the set. */
+	private int size = 0;
+
+	/**
+	 * Instantiates a new empty cell set.
+	 *
+	 * @param capacity the number of grid cells
+	 */
+	public CellSet(int capacity) {
+		stamp = new int[capacity];
+		cells = new int[capacity];
+	}
+
+	/**
+	 * Removes all cells from the set.
+	 */
+	public void clear() {
+
+		size = 0;
+		if (++gen == Integer.MAX_VALUE) { // reset the stamps on overflow
+			Arrays.fill(stamp, 0);
+			gen = 1;
+		}
+	}
+
+	/**
+	 * Adds a cell to the set.
+	 *
+	 * @param cell the cell index
+	 * @return true, if the cell was not part of the set before
+	 */
+	public boolean add(int cell) {
+
+		if (stamp[cell] == gen)
+			return false;
+
+		stamp[cell] = gen;
+		cells[size++] = cell;
+		return true;
+	}
+
+	/**
+	 * Checks if a cell is part of the set.
+	 *
+	 * @param cell the cell index
+	 * @return true, if the cell is part of the set
+	 */
+	public boolean contains(int cell) {
+		return stamp[cell] == gen;
+	}
+
+	/**
+	 * Gets the number of cells in the set.
+	 *
+	 * @return the number of cells
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a cell of the set by its insertion order.
+	 *
+	 * @param i the insertion order index (0..size-1)
+	 * @return the cell index
+	 */
+	public int get(int i) {
+		return cells[i];
+	}
+
+	/**
+	 * Gets the number of grid cells the set can hold.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return stamp.length;
+	}
+}
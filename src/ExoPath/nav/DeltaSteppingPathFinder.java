@@ -0,0 +1,542 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.newdawn.slick.util.pathfinding.Path;
+import org.newdawn.slick.util.pathfinding.PathFinder;
+import org.newdawn.slick.util.pathfinding.PathFinderMap;
+
+/**
+ * A path finder implementation that uses the parallel delta stepping algorithm to determine
+ * all paths from a source (an alternative to the Dijkstra path finder for large grids).
+ * The cells are kept in buckets of the path cost range delta. The cells of the current bucket
+ * are relaxed in parallel by one worker per thread on a fork join pool, the path costs are
+ * lowered with an atomic compare and set on the float bits (the bits of non negative floats
+ * have the same order as the values). Improved cells are collected per worker and sorted into
+ * the buckets between the parallel steps, a bucket is done if no cell of it was improved.
+ * The path costs are the same as the Dijkstra path costs. After the search the parent of each cell
+ * is the neighbor with the lowest cell index giving its path cost, so the paths don't depend
+ * on the thread timing. The search is not limited by the maximum search distance.
+ */
+public class DeltaSteppingPathFinder extends PathFinder {
+
+	/**
+	 * A growable list of cell indices.
+	 */
+	private static class CellList {
+
+		/** The cells. */
+		private int[] cells = new int[64];
+
+		/** The number of cells. */
+		private int size = 0;
+
+		/**
+		 * Adds a cell.
+		 *
+		 * @param cell the cell index
+		 */
+		private void add(int cell) {
+			if (size == cells.length)
+				cells = Arrays.copyOf(cells, 2 * size);
+			cells[size++] = cell;
+		}
+	}
+
+	/**
+	 * A worker for a slice of the cells of a parallel step.
+	 */
+	private class Worker extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The step to reset the path costs of the cells. */
+		static final int RESET = 0;
+
+		/** The step to relax the neighbors of the frontier cells. */
+		static final int RELAX = 1;
+
+		/** The step to select the parents of the cells. */
+		static final int PARENT = 2;
+
+		/** The worker index. */
+		private final int id;
+
+		/** The cells improved by the relax step. */
+		private final CellList improved = new CellList();
+
+		/** The current step. */
+		int step;
+
+		/**
+		 * Instantiates a new worker.
+		 *
+		 * @param id the worker index
+		 */
+		Worker(int id) {
+			this.id = id;
+		}
+
+		@Override
+		protected void compute() {
+
+			int n = step == RELAX ? frontier.size : size;
+			int i0 = (int) ((long) n * id / workers.length);
+			int i1 = (int) ((long) n * (id + 1) / workers.length);
+
+			switch (step) {
+			case RESET:
+				for (int i = i0; i < i1; i++)
+					cost.set(i, UNREACHED);
+				break;
+			case RELAX:
+				improved.size = 0;
+				for (int i = i0; i < i1; i++)
+					relax(frontier.cells[i], improved);
+				break;
+			case PARENT:
+				for (int i = i0; i < i1; i++)
+					parent[i] = selectParent(i);
+				break;
+			}
+		}
+	}
+
+	/** The float bits of the path cost of unreached cells. */
+	private static final int UNREACHED = Float.floatToIntBits(Float.MAX_VALUE);
+
+	/** The path cost range of a bucket. */
+	private float delta = 2;
+
+	/** The fork join pool for the parallel steps. */
+	private final ForkJoinPool pool;
+
+	/** The workers, one per thread. */
+	private final Worker[] workers;
+
+	/** The number of map cells. */
+	private final int size;
+
+	/** The float bits of the path cost of the cells. */
+	private final AtomicIntegerArray cost;
+
+	/** The path distance of the cells. */
+	private final float[] dist;
+
+	/** The parent cell of the cells (-1 for the source and unreached cells). */
+	private final int[] parent;
+
+	/** The buckets of the cells (cells can be in several buckets, only the one of their cost counts). */
+	private final List<CellList> buckets = new ArrayList<CellList>();
+
+	/** The cells of the current bucket to relax. */
+	private CellList frontier = new CellList();
+
+	/** The cells of the current bucket to relax next. */
+	private CellList next = new CellList();
+
+	/** The generation stamp of the cells taken into the frontier (or having a path distance). */
+	private final int[] stamp;
+
+	/** The current generation. */
+	private int gen = 0;
+
+	/** The cells of a parent chain without path distance. */
+	private final int[] chain;
+
+	/** The source cell of the last search (-1 if there was none). */
+	private int source = -1;
+
+	/** The map version of the last search (-1 for maps without version). */
+	private int version = -1;
+
+	/** The flag if the source of the last search is traversable. */
+	private boolean valid;
+
+	/**
+	 * Create a path finder.
+	 *
+	 * @param map The map to be searched
+	 * @param allowDiagMovement True if the search should try diagonal movement
+	 * @param threads The number of threads
+	 */
+	public DeltaSteppingPathFinder(PathFinderMap map, boolean allowDiagMovement, int threads) {
+
+		super(map, Integer.MAX_VALUE, allowDiagMovement);
+
+		size = map.getWidth() * map.getHeight();
+		cost = new AtomicIntegerArray(size);
+		dist = new float[size];
+		parent = new int[size];
+		stamp = new int[size];
+		chain = new int[size];
+
+		pool = new ForkJoinPool(Math.max(1, threads));
+		workers = new Worker[Math.max(1, threads)];
+		for (int i = 0; i < workers.length; i++)
+			workers[i] = new Worker(i);
+	}
+
+	/**
+	 * The path finder init method for a given map.
+	 * The start point from the map is used.
+	 *
+	 * @param map the map
+	 */
+	public void initPathFinder(PathFinderMap map) {
+
+		this.map = map;
+		search(map.getPosX(), map.getPosY());
+	}
+
+	/**
+	 * The delta stepping algorithm to get all paths from the given source.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 */
+	private void search(int sx, int sy) {
+
+		int w = map.getWidth();
+		source = sy * w + sx;
+		version = map instanceof Map ? ((Map) map).getVersion() : -1;
+		valid = isValidLocation(sx, sy);
+
+		run(Worker.RESET);
+		for (CellList b : buckets)
+			b.size = 0;
+
+		cost.set(source, Float.floatToIntBits(0));
+		bucket(0).add(source);
+
+		for (int i = 0; i < buckets.size(); i++) {
+
+			// the cells of the bucket (once each, just if their cost is still within the bucket)
+			newGeneration();
+			frontier.size = 0;
+			CellList b = buckets.get(i);
+			for (int k = 0; k < b.size; k++)
+				take(b.cells[k], i, frontier);
+			b.size = 0;
+
+			// relax until no cell of the bucket is improved
+			while (frontier.size > 0) {
+				run(Worker.RELAX);
+				newGeneration();
+				next.size = 0;
+				for (Worker worker : workers)
+					for (int k = 0; k < worker.improved.size; k++) {
+						int cell = worker.improved.cells[k];
+						int j = (int) (getCost(cell) / delta);
+						if (j == i)
+							take(cell, i, next);
+						else
+							bucket(j).add(cell);
+					}
+				CellList tmp = frontier;
+				frontier = next;
+				next = tmp;
+			}
+		}
+
+		run(Worker.PARENT);
+		setDist();
+	}
+
+	/**
+	 * Relaxes the neighbors of a cell.
+	 *
+	 * @param cell the cell index
+	 * @param improved the list for the improved cells
+	 */
+	private void relax(int cell, CellList improved) {
+
+		if (!valid)
+			return;
+
+		int w = map.getWidth();
+		int cx = cell % w;
+		int cy = cell / w;
+		float c0 = getCost(cell);
+		for (int x = -1; x < 2; x++) {
+			for (int y = -1; y < 2; y++) {
+
+				if ((x == 0) && (y == 0))
+					continue;
+				if (!allowDiagMovement && (x != 0) && (y != 0))
+					continue;
+
+				int xp = x + cx;
+				int yp = y + cy;
+				if (!isValidLocation(xp, yp))
+					continue;
+
+				int n = yp * w + xp;
+				int bits = Float.floatToIntBits(c0 + getDist(cx, cy, xp, yp) + map.getCost(cx, cy, xp, yp));
+				while (true) { // atomic minimum
+					int old = cost.get(n);
+					if (bits >= old)
+						break;
+					if (cost.compareAndSet(n, old, bits)) {
+						improved.add(n);
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Selects the parent of a cell: the neighbor with the lowest cell index giving its path cost.
+	 *
+	 * @param cell the cell index
+	 * @return the parent cell index or -1 for the source and unreached cells
+	 */
+	private int selectParent(int cell) {
+
+		float c = getCost(cell);
+		if (cell == source || c == Float.MAX_VALUE)
+			return -1;
+
+		int w = map.getWidth();
+		int cx = cell % w;
+		int cy = cell / w;
+		for (int y = -1; y < 2; y++) {
+			for (int x = -1; x < 2; x++) {
+
+				if ((x == 0) && (y == 0))
+					continue;
+				if (!allowDiagMovement && (x != 0) && (y != 0))
+					continue;
+
+				int xp = x + cx;
+				int yp = y + cy;
+				if (xp < 0 || yp < 0 || xp >= w || yp >= map.getHeight())
+					continue;
+				int n = yp * w + xp;
+				if (n != source && !isValidLocation(xp, yp))
+					continue;
+
+				float cn = getCost(n);
+				if (cn < Float.MAX_VALUE && cn + getDist(xp, yp, cx, cy) + map.getCost(xp, yp, cx, cy) == c)
+					return n;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets the path distances along the parent references and marks the reached cells
+	 * as visited.
+	 */
+	private void setDist() {
+
+		int w = map.getWidth();
+		newGeneration();
+		dist[source] = 0;
+		stamp[source] = gen;
+		for (int cell = 0; cell < size; cell++) {
+			if (cell != source && parent[cell] < 0)
+				continue;
+
+			// up to a cell with a known distance, then down again
+			int n = 0;
+			for (int c = cell; stamp[c] != gen; c = parent[c])
+				chain[n++] = c;
+			while (n > 0) {
+				int c = chain[--n];
+				int p = parent[c];
+				dist[c] = dist[p] + getDist(p % w, p / w, c % w, c / w);
+				stamp[c] = gen;
+			}
+			map.pathFinderVisited(cell % w, cell / w);
+		}
+	}
+
+	/**
+	 * Takes a cell into a frontier list if its path cost is within the bucket and
+	 * if it was not taken yet.
+	 *
+	 * @param cell the cell index
+	 * @param i the bucket index
+	 * @param list the frontier list
+	 */
+	private void take(int cell, int i, CellList list) {
+
+		if (stamp[cell] != gen && (int) (getCost(cell) / delta) == i) {
+			stamp[cell] = gen;
+			list.add(cell);
+		}
+	}
+
+	/**
+	 * Gets a bucket, missing buckets are added.
+	 *
+	 * @param i the bucket index
+	 * @return the bucket
+	 */
+	private CellList bucket(int i) {
+
+		while (buckets.size() <= i)
+			buckets.add(new CellList());
+		return buckets.get(i);
+	}
+
+	/**
+	 * Starts a new generation of the stamps.
+	 */
+	private void newGeneration() {
+
+		if (++gen == Integer.MAX_VALUE) { // reset the stamps on overflow
+			Arrays.fill(stamp, 0);
+			gen = 1;
+		}
+	}
+
+	/**
+	 * Runs a step on all workers.
+	 *
+	 * @param step the step
+	 */
+	private void run(int step) {
+
+		for (Worker worker : workers) {
+			worker.reinitialize();
+			worker.step = step;
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(workers);
+			}
+		});
+	}
+
+	/**
+	 * Gets the path cost of a cell.
+	 *
+	 * @param cell the cell index
+	 * @return the path cost
+	 */
+	private float getCost(int cell) {
+		return Float.intBitsToFloat(cost.get(cell));
+	}
+
+	/**
+	 * Returns the path to a target location.
+	 * The start point from the map is used.
+	 *
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the path
+	 */
+	public Path findPath(int tx, int ty) {
+
+		return findPath(map.getPosX(), map.getPosY(), tx, ty);
+	}
+
+	/**
+	 * Returns the path from a source to a target location. The paths are searched
+	 * if the source or the map version differs from the last search.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the path
+	 * @see PathFinder#findPath(int, int, int, int)
+	 */
+	@Override
+	public Path findPath(int sx, int sy, int tx, int ty) {
+
+		// easy first check, if the destination is blocked, we can't get there
+		if (map.blocked(tx, ty))
+			return null;
+
+		int w = map.getWidth();
+		int v = map instanceof Map ? ((Map) map).getVersion() : -1;
+		if (source != sy * w + sx || version != v || v < 0)
+			search(sx, sy);
+
+		int cell = ty * w + tx;
+		if (parent[cell] < 0)
+			return null;
+
+		Path path = new Path();
+		for (; cell != source; cell = parent[cell])
+			path.prependStep(cell % w, cell / w);
+		path.prependStep(sx, sy);
+
+		return path;
+	}
+
+	/**
+	 * Gets the path cost value of a given cell coordinate.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the path cost value (Float.MAX_VALUE if the cell was not reached)
+	 */
+	public float getPathCost(int x, int y) {
+		return getCost(y * map.getWidth() + x);
+	}
+
+	/**
+	 * Gets the path distance value to a given cell.
+	 *
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the path distance (0 if the cell was not reached)
+	 */
+	public float getPathDist(int x, int y) {
+		int cell = y * map.getWidth() + x;
+		return cell == source || parent[cell] >= 0 ? dist[cell] : 0;
+	}
+
+	/**
+	 * Sets the path cost range of a bucket. A small range gives less cells relaxed again,
+	 * a large range more cells to relax in parallel per step.
+	 *
+	 * @param delta the bucket range (positive)
+	 */
+	public void setDelta(float delta) {
+		if (!(delta > 0))
+			throw new IllegalArgumentException("bucket range must be positive: " + delta);
+		this.delta = delta;
+	}
+
+	/**
+	 * Gets the path cost range of a bucket.
+	 *
+	 * @return the bucket range
+	 */
+	public float getDelta() {
+		return delta;
+	}
+
+	/**
+	 * Shuts the fork join pool down (the path finder can't be used any more).
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
@@ -12,35 +12,141 @@
 
 package exopath.nav;
 
-import org.newdawn.slick.util.pathfinding.Node;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.newdawn.slick.util.pathfinding.Path;
 import org.newdawn.slick.util.pathfinding.PathFinder;
 import org.newdawn.slick.util.pathfinding.PathFinderMap;
-import org.newdawn.slick.util.pathfinding.SortedNodeList;
 
 /**
  * A path finder implementation that uses the Dijkstra algorithm
- * to determine a path.
+ * to determine a path. The open cells are kept in a cell queue, which is selected
+ * at construction (an indexed heap by default or a bucket queue for bounded edge costs).
+ * The search state is kept in flat arrays indexed by the cell index y*width+x (no node
+ * objects), the cells of the path tree are a generation stamped set, so a new search
+ * does not have to reset the arrays.
+ * The paths from a source (the cost field) are cached for the source cell and the map version,
+ * the least recently used field is recomputed if a source is not cached. A field is only used
+ * for the map version it was computed for, so any change of the map invalidates it.
+ * A field of an older map version is repaired with the cells changed since (if the map
+ * recorded them): the paths through cells with an increased cost are removed and searched
+ * again from their neighbors, cells with a decreased cost propagate their new paths.
+ * So the effort depends on the size of the change and not on the size of the map.
+ * For a set of goal cells the search stops as soon as all goals are settled, optionally
+ * limited by the path cost and the distance from the source (a bounded field, which just
+ * serves the settled cells).
  */
 public class DijkstraPathFinder extends PathFinder {
 
+	/** The key width of a bucket of the bucket queue (a straight step costs at least 1). */
+	private static final float BUCKET_WIDTH = 1;
+
+	/** The initial key range of the bucket queue (above the maximum edge cost of the default cost model). */
+	private static final float BUCKET_RANGE = 16;
+
 	/**
-	 * The extended Dijkstra node to save a cost value.
+	 * The paths from a source cell (the Dijkstra path tree) for a map version.
 	 */
-	private class DNode extends Node {
+	private static class CostField {
+
+		/** The map of the field. */
+		private PathFinderMap map;
+
+		/** The map version of the field (-1 for maps without version). */
+		private int version;
+
+		/** The source cell (-1 if the field was not computed yet). */
+		private int source = -1;
+
+		/** The flag if the search was not stopped by the maximum search distance or a bound. */
+		private boolean complete;
+
+		/** The flag if the search was stopped at the goals or a bound (just the expanded cells are final). */
+		private boolean bounded;
+
+		/** The path cost of the cells of the path tree. */
+		private final float[] cost;
+
+		/** The path distance of the cells of the path tree. */
+		private final float[] dist;
+
+		/** The parent cell of the cells of the path tree (-1 for the source). */
+		private final int[] parent;
 
-		@Override
-		protected float getSortValue() {
-			return cost;
+		/** The cells reached by the search. */
+		private final CellSet reached;
+
+		/** The cells expanded by the search (visited). */
+		private final CellSet closed;
+
+		/**
+		 * Instantiates a new cost field.
+		 *
+		 * @param size the number of map cells
+		 */
+		private CostField(int size) {
+			cost = new float[size];
+			dist = new float[size];
+			parent = new int[size];
+			reached = new CellSet(size);
+			closed = new CellSet(size);
 		}
 	}
 
-	/** The init flag. If its true, the calculation is finished for a
-	 * given start point and all paths are available*/
-	private boolean init = false;
+	/** The queue of the cells that we do not yet consider fully searched. */
+	private final CellQueue open;
+
+	/** The maximum number of cached cost fields (paths from different sources). */
+	private int fieldCache = 4;
+
+	/** The flag to repair cached cost fields with the changed map cells instead of searching again. */
+	private boolean repair = true;
+
+	/** The cached cost fields, the most recently used first. */
+	private final List<CostField> fields = new ArrayList<CostField>();
+
+	/** The cost field of the last query (for the path cost and distance values). */
+	private CostField field;
 
-	/** The set of nodes that we do not yet consider fully searched. */
-	private final SortedNodeList open = new SortedNodeList();
+	/** The number of steps from the source of the cells reached by the path tree search. */
+	private final int[] depth;
+
+	/** The number of path tree searches. */
+	private int searches = 0;
+
+	/** The cells whose paths were removed by the last repair. */
+	private final CellSet affected;
+
+	/** The number of cells (re-)expanded by the last search or repair of a cost field. */
+	private int reexpanded = 0;
+
+	/**
+	 * The corridor radius around a coarse path (in coarse cells) for the coarse to fine search,
+	 * a narrow corridor misses the detours of the best path around costly coarse cells.
+	 */
+	private int corridor = 4;
+
+	/** The path cost of the cells reached by the corridor search. */
+	private final float[] pathCost;
+
+	/** The parent cell of the cells reached by the corridor search. */
+	private final int[] parent;
+
+	/** The cells reached by the corridor search. */
+	private final CellSet reached;
+
+	/** The cells expanded by the corridor search. */
+	private final CellSet closed;
+
+	/** The map cells of the corridor around a coarse path. */
+	private final CellSet corridorCells;
+
+	/** The number of map cells expanded by the last corridor search. */
+	private int expanded = 0;
+
+	/** The path cost of the last coarse to fine search. */
+	private float coarseToFineCost = Float.MAX_VALUE;
 
 	/**
 	 * Create a path finder.
@@ -50,66 +156,373 @@ public class DijkstraPathFinder extends PathFinder {
 	 * @param allowDiagMovement True if the search should try diagonal movement
 	 */
 	public DijkstraPathFinder(PathFinderMap map, int maxSearchDistance, boolean allowDiagMovement) {
+		this(map, maxSearchDistance, allowDiagMovement, false);
+	}
+
+	/**
+	 * Create a path finder with a heap or a bucket queue for the open cells.
+	 * The bucket queue (Dial's algorithm) is faster for the bounded edge costs of a Map,
+	 * both queues give the same paths.
+	 *
+	 * @param map The map to be searched
+	 * @param maxSearchDistance The maximum depth we'll search before giving up
+	 * @param allowDiagMovement True if the search should try diagonal movement
+	 * @param bucketQueue True for the bucket queue, false for the heap
+	 */
+	public DijkstraPathFinder(PathFinderMap map, int maxSearchDistance, boolean allowDiagMovement,
+			boolean bucketQueue) {
+
+		this(map, maxSearchDistance, allowDiagMovement, bucketQueue
+				? new BucketCellQueue(map.getWidth() * map.getHeight(), BUCKET_WIDTH, BUCKET_RANGE)
+				: new HeapCellQueue(map.getWidth() * map.getHeight()));
+	}
+
+	/**
+	 * Create a path finder with a given cell queue.
+	 *
+	 * @param map The map to be searched
+	 * @param maxSearchDistance The maximum depth we'll search before giving up
+	 * @param allowDiagMovement True if the search should try diagonal movement
+	 * @param open The queue of the open cells (for all map cells)
+	 */
+	public DijkstraPathFinder(PathFinderMap map, int maxSearchDistance, boolean allowDiagMovement,
+			CellQueue open) {
 
 		super(map, maxSearchDistance, allowDiagMovement);
+		this.open = open;
+
+		int size = map.getWidth() * map.getHeight();
+		depth = new int[size];
+		affected = new CellSet(size);
+		pathCost = new float[size];
+		parent = new int[size];
+		reached = new CellSet(size);
+		closed = new CellSet(size);
+		corridorCells = new CellSet(size);
+	}
+
+	/**
+	 * Sets the maximum number of cached cost fields (paths from different sources),
+	 * the least recently used fields beyond are dropped.
+	 *
+	 * @param fieldCache the number of cached fields (at least 1)
+	 */
+	public void setFieldCache(int fieldCache) {
+		if (fieldCache < 1)
+			throw new IllegalArgumentException("field cache must hold at least one field: " + fieldCache);
+		this.fieldCache = fieldCache;
+		while (fields.size() > fieldCache)
+			fields.remove(fields.size() - 1);
+	}
+
+	/**
+	 * Gets the maximum number of cached cost fields.
+	 *
+	 * @return the number of cached fields
+	 */
+	public int getFieldCache() {
+		return fieldCache;
+	}
+
+	/**
+	 * Enables or disables the repair of cached cost fields with the changed map cells
+	 * (otherwise the paths are searched again for each map version).
+	 *
+	 * @param repair true, to repair the cached fields
+	 */
+	public void setRepair(boolean repair) {
+		this.repair = repair;
+	}
 
-		// create the nodes
-		for (int x = 0; x < map.getWidth(); x++)
-			for (int y = 0; y < map.getHeight(); y++)
-				setNode(x, y, new DNode());
+	/**
+	 * Checks if cached cost fields are repaired with the changed map cells.
+	 *
+	 * @return true, if the cached fields are repaired
+	 */
+	public boolean isRepair() {
+		return repair;
+	}
+
+	/**
+	 * Sets the corridor radius around a coarse path for the coarse to fine search.
+	 *
+	 * @param corridor the corridor radius in coarse cells (0 for just the cells of the coarse path)
+	 */
+	public void setCorridor(int corridor) {
+		if (corridor < 0)
+			throw new IllegalArgumentException("corridor radius must not be negative: " + corridor);
+		this.corridor = corridor;
+	}
+
+	/**
+	 * Gets the corridor radius around a coarse path for the coarse to fine search.
+	 *
+	 * @return the corridor radius in coarse cells
+	 */
+	public int getCorridor() {
+		return corridor;
 	}
 
 	/**
 	 * The path finder init method for a given map.
-	 * The start point from the map is used.
+	 * The start point from the map is used. If the paths from the start point
+	 * are cached for the map version, the cells visited by the search are marked again.
 	 *
 	 * @param map the map
 	 */
 	public void initPathFinder(PathFinderMap map) {
 
 		this.map = map;
+		int n = searches;
+		field = getField(map.getPosX(), map.getPosY(), -1);
+		if (field != null && n == searches) {
+			for (int i = 0; i < field.closed.size(); i++) {
+				int cell = field.closed.get(i);
+				if (field.cost[cell] < Float.MAX_VALUE) // not removed by a repair
+					map.pathFinderVisited(cell % map.getWidth(), cell / map.getWidth());
+			}
+		}
+	}
 
-		// init all nodes
-		for (int x = 0; x < map.getWidth(); x++)
-			for (int y = 0; y < map.getHeight(); y++) {
-				Node node = getNode(x, y);
-				node.parent = null;
-				node.closed = false;
-				node.cost = Float.MAX_VALUE;
-				node.dist = 0;
+	/**
+	 * Gets the cost field for a source cell, either from the cache, by a repair of a cached
+	 * field of an older map version or by a new search (in the least recently used field).
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param target the target cell (the field must be final for it) or -1 for all cells
+	 * @return the cost field or null if the source is outside of the map
+	 */
+	private CostField getField(int sx, int sy, int target) {
+
+		int w = map.getWidth();
+		if (sx < 0 || sy < 0 || sx >= w || sy >= map.getHeight())
+			return null;
+
+		int src = sy * w + sx;
+		int version = map instanceof Map ? ((Map) map).getVersion() : -1;
+		for (int i = 0; i < fields.size(); i++) {
+			CostField f = fields.get(i);
+			if (f.source == src && f.map == map && f.version == version && version >= 0
+					&& (!f.bounded || (target >= 0 && f.closed.contains(target)))) {
+				fields.add(0, fields.remove(i));
+				return f;
+			}
+		}
+
+		CostField f = repairField(sx, sy, version);
+		if (f != null)
+			return f;
+
+		f = newField(src, version);
+		search(f, sx, sy, null, Float.MAX_VALUE, Float.MAX_VALUE);
+		return f;
+	}
+
+	/**
+	 * Repairs a cached complete field of the source of an older map version with the changed cells.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param version the current map version
+	 * @return the repaired field (the first one of the cache) or null if there is none to repair
+	 */
+	private CostField repairField(int sx, int sy, int version) {
+
+		int src = sy * map.getWidth() + sx;
+		for (int i = 0; i < fields.size() && repair && version >= 0; i++) {
+			CostField f = fields.get(i);
+			CellSet changes = ((Map) map).getChanges(f.version);
+			if (f.source == src && f.map == map && f.complete && changes != null
+					&& !changes.contains(src) && isValidLocation(sx, sy)) {
+				fields.add(0, fields.remove(i));
+				f.version = version;
+				repair(f, changes);
+				return f;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Searches the paths from a source to a set of goal cells. The search stops as soon as
+	 * all goals are settled (their paths are final) or proven unreachable (blocked or
+	 * no more cells to search). It can be limited by the path cost and by the distance from
+	 * the source, the goals beyond are not reached. The paths to the goals are then available
+	 * by findPath, getPathCost and getPathDist for the same source (and the map version),
+	 * other targets start a new search. A complete field of the source for an older map
+	 * version is repaired (like for findPath), so the effort depends on the map changes.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param goals the goal cells
+	 * @param maxCost the maximum path cost (Float.MAX_VALUE for no limit)
+	 * @param maxRadius the maximum distance from the source in cells (Float.MAX_VALUE for no limit)
+	 * @return the number of reached goals
+	 */
+	public int findPaths(int sx, int sy, CellSet goals, float maxCost, float maxRadius) {
+
+		int w = map.getWidth();
+		field = null;
+		if (sx < 0 || sy < 0 || sx >= w || sy >= map.getHeight())
+			return 0;
+
+		// a cached field with all goals settled, a repaired complete field or a new search
+		int src = sy * w + sx;
+		int version = map instanceof Map ? ((Map) map).getVersion() : -1;
+		for (int i = 0; i < fields.size() && field == null; i++) {
+			CostField f = fields.get(i);
+			if (f.source == src && f.map == map && f.version == version && version >= 0
+					&& (!f.bounded || settled(f, goals))) {
+				fields.add(0, fields.remove(i));
+				field = f;
 			}
+		}
+		if (field == null)
+			field = repairField(sx, sy, version);
+		if (field == null) {
+			field = newField(src, version);
+			search(field, sx, sy, goals, maxCost, maxRadius);
+		}
+
+		int n = 0;
+		for (int i = 0; i < goals.size(); i++) {
+			int g = goals.get(i);
+			if (hasPath(field, g) && field.cost[g] <= maxCost)
+				n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Checks if a cost field has the final path to a cell. The cells removed by a repair
+	 * have no path (they keep their reached flag) and a bounded field just has the final
+	 * paths of the expanded cells.
+	 *
+	 * @param f the cost field
+	 * @param cell the cell index
+	 * @return true, if the cell has a path from the source
+	 */
+	private static boolean hasPath(CostField f, int cell) {
+		return f.reached.contains(cell) && (f.parent[cell] >= 0 || cell == f.source)
+				&& (!f.bounded || f.closed.contains(cell));
+	}
+
+	/**
+	 * Checks if all goals are settled by a bounded field.
+	 *
+	 * @param f the cost field
+	 * @param goals the goal cells
+	 * @return true, if all goals were expanded
+	 */
+	private static boolean settled(CostField f, CellSet goals) {
+
+		for (int i = 0; i < goals.size(); i++)
+			if (!f.closed.contains(goals.get(i)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Gets a field for a new search, the least recently used field is reused.
+	 *
+	 * @param src the source cell
+	 * @param version the map version
+	 * @return the cost field (the first one of the cache)
+	 */
+	private CostField newField(int src, int version) {
+
+		CostField f;
+		if (fields.size() < fieldCache)
+			f = new CostField(map.getWidth() * map.getHeight());
+		else
+			f = fields.remove(fields.size() - 1);
 
-		initPathFinder(map.getPosX(), map.getPosY());
+		f.map = map;
+		f.version = version;
+		f.source = src;
+		fields.add(0, f);
+		return f;
 	}
 
 	/**
 	 * The Dijkstra algorithm to get all paths from the given source
+	 * (or the paths to the given goals).
 	 *
+	 * @param f the cost field for the paths
 	 * @param sx the source x coordinate
 	 * @param sy the source y coordinate
+	 * @param goals the goal cells or null for all cells
+	 * @param maxCost the maximum path cost to expand
+	 * @param maxRadius the maximum distance from the source in cells
 	 */
-	private void initPathFinder(int sx, int sy) {
+	private void search(CostField f, int sx, int sy, CellSet goals, float maxCost, float maxRadius) {
 
-		// initial state
-		if (getNode(sx, sy) == null)
-			return;
+		int w = map.getWidth();
+		float[] cost = f.cost;
+		float[] dist = f.dist;
+		int[] parent = f.parent;
+		CellSet reached = f.reached;
+		CellSet closed = f.closed;
 
-		getNode(sx, sy).cost = 0;
-		getNode(sx, sy).depth = 0;
+		// initial state
+		searches++;
+		reexpanded = 0;
+		reached.clear();
+		closed.clear();
 		open.clear();
-		open.add(getNode(sx, sy));
+
+		int src = sy * w + sx;
+		reached.add(src);
+		cost[src] = 0;
+		dist[src] = 0;
+		parent[src] = -1;
+		depth[src] = 0;
+		open.update(src, 0);
+
+		// no paths from a blocked source
+		boolean valid = isValidLocation(sx, sy);
+
+		// the goals to settle (blocked goals are unreachable)
+		int remaining = -1;
+		if (goals != null) {
+			remaining = 0;
+			for (int i = 0; i < goals.size(); i++) {
+				int g = goals.get(i);
+				if (g == src || isValidLocation(g % w, g / w))
+					remaining++;
+			}
+		}
+		// a radius reaching all map corners does not limit the search
+		float r2 = maxRadius * maxRadius;
+		int fx = Math.max(sx, w - 1 - sx);
+		int fy = Math.max(sy, map.getHeight() - 1 - sy);
+		boolean limited = maxRadius < Float.MAX_VALUE && r2 < (float) fx * fx + (float) fy * fy;
 
 		int maxDepth = 0;
-		while ((maxDepth < maxSearchDistance) && (open.size() != 0)) {
+		boolean stopped = remaining == 0;
+		while ((maxDepth < maxSearchDistance) && !open.isEmpty() && !stopped) {
+
+			// pull out the first cell in our open list
+			int cell = open.poll();
+			if (cost[cell] > maxCost) {
+				open.update(cell, cost[cell]); // not expanded
+				break;
+			}
+			closed.add(cell);
+			reexpanded++;
+			int cx = cell % w;
+			int cy = cell / w;
 
-			// pull out the first node in our open list
-			Node node = open.first();
-			open.remove(node);
-			node.closed = true;
+			map.pathFinderVisited(cx, cy);
 
-			map.pathFinderVisited(node.x, node.y);
+			// the last goal needs no expansion
+			if (remaining > 0 && goals.contains(cell) && --remaining == 0) {
+				stopped = true;
+				break;
+			}
 
-			// search through all the neighbors of the current node
+			// search through all the neighbors of the current cell
 			for (int x = -1; x < 2; x++) {
 				for (int y = -1; y < 2; y++) {
 
@@ -124,34 +537,220 @@ public class DijkstraPathFinder extends PathFinder {
 					}
 
 					// determine the location of the neighbor and evaluate it
-					int xp = x + node.x;
-					int yp = y + node.y;
+					int xp = x + cx;
+					int yp = y + cy;
+					if (limited && (xp - sx) * (xp - sx) + (yp - sy) * (yp - sy) > r2)
+						continue;
 
-					if (isValidLocation(sx, sy) && isValidLocation(xp, yp)) {
-						Node neighbour = getNode(xp, yp);
-						if (neighbour.closed)
+					if (valid && isValidLocation(xp, yp)) {
+						int n = yp * w + xp;
+						if (closed.contains(n))
 							continue;
 
-						float dist = getDist(node.x, node.y, xp, yp);
-						float cost = node.cost + dist + map.getCost(node.x, node.y, xp, yp);
-						if (cost < neighbour.cost) {
-							maxDepth = Math.max(maxDepth, neighbour.setParent(node));
-							neighbour.cost = cost;
-							neighbour.dist = node.dist + dist;
+						float d = getDist(cx, cy, xp, yp);
+						float c = cost[cell] + d + map.getCost(cx, cy, xp, yp);
+						// on equal path costs the parent with the lower index is taken
+						if (reached.add(n) || c < cost[n] || (c == cost[n] && cell < parent[n])) {
+							cost[n] = c;
+							dist[n] = dist[cell] + d;
+							parent[n] = cell;
+							depth[n] = depth[cell] + 1;
+							maxDepth = Math.max(maxDepth, depth[n]);
+							open.update(n, c);
 						}
-						if (!open.contains(node))
-							open.add(neighbour);
 					}
 				}
 			}
 		}
+
+		// stopped at the goals, a bound or the maximum depth, just the expanded cells are final
+		f.complete = open.isEmpty() && !limited && !stopped;
+		f.bounded = !f.complete;
+	}
+
+	/**
+	 * Repairs a cost field for the changed map cells. The cells with an increased cost lose
+	 * their paths and so do all cells of their subtrees, these cells and the changed cells
+	 * get the best path from their neighbors, then the new paths are propagated in cost
+	 * order like in the Dijkstra search (until no cell can be improved any more).
+	 * The source cell must not be changed and not be blocked.
+	 *
+	 * @param f the cost field (a complete search)
+	 * @param changes the cells changed since the field was searched
+	 */
+	private void repair(CostField f, CellSet changes) {
+
+		int w = map.getWidth();
+		float[] cost = f.cost;
+		int[] parent = f.parent;
+		CellSet reached = f.reached;
+
+		reexpanded = 0;
+		affected.clear();
+		open.clear();
+
+		// the cells with an increased cost (or blocked) and their subtrees lose their paths
+		for (int i = 0; i < changes.size(); i++) {
+			int cell = changes.get(i);
+			if (!reached.contains(cell) || parent[cell] < 0 || affected.contains(cell))
+				continue;
+			int x = cell % w;
+			int y = cell / w;
+			if (!isValidLocation(x, y) || step(f, parent[cell], x, y) > cost[cell])
+				removePaths(f, cell);
+		}
+
+		// the best paths from the neighbors
+		for (int i = 0; i < affected.size(); i++)
+			reconnect(f, affected.get(i));
+		for (int i = 0; i < changes.size(); i++)
+			if (!affected.contains(changes.get(i)))
+				reconnect(f, changes.get(i));
+
+		// propagate the new paths
+		while (!open.isEmpty()) {
+
+			int cell = open.poll();
+			f.closed.add(cell);
+			reexpanded++;
+			int cx = cell % w;
+			int cy = cell / w;
+
+			map.pathFinderVisited(cx, cy);
+
+			for (int x = -1; x < 2; x++) {
+				for (int y = -1; y < 2; y++) {
+
+					if ((x == 0) && (y == 0))
+						continue;
+					if (!allowDiagMovement && (x != 0) && (y != 0))
+						continue;
+
+					int xp = x + cx;
+					int yp = y + cy;
+					int n = yp * w + xp;
+					if (n == f.source || !isValidLocation(xp, yp))
+						continue;
+
+					// on equal path costs the parent with the lower index is taken (as by the search),
+					// a child whose parent got a new path distance is updated too
+					float c = step(f, cell, xp, yp);
+					float d = f.dist[cell] + getDist(cx, cy, xp, yp);
+					if (reached.add(n) || c < cost[n] || (c == cost[n] && cell < parent[n])
+							|| (parent[n] == cell && d != f.dist[n])) {
+						cost[n] = c;
+						f.dist[n] = d;
+						parent[n] = cell;
+						open.update(n, c);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the paths of a cell and of all cells of its subtree.
+	 *
+	 * @param f the cost field
+	 * @param cell the cell index
+	 */
+	private void removePaths(CostField f, int cell) {
+
+		int w = map.getWidth();
+		int h = map.getHeight();
+		int first = affected.size();
+		affected.add(cell);
+
+		// the affected cells are also the queue of the cells to check for children
+		for (int k = first; k < affected.size(); k++) {
+			int c = affected.get(k);
+			int cx = c % w;
+			int cy = c / w;
+			for (int x = Math.max(cx - 1, 0); x <= Math.min(cx + 1, w - 1); x++)
+				for (int y = Math.max(cy - 1, 0); y <= Math.min(cy + 1, h - 1); y++) {
+					int n = y * w + x;
+					if (f.parent[n] == c && f.reached.contains(n) && !affected.contains(n))
+						affected.add(n);
+				}
+			f.cost[c] = Float.MAX_VALUE;
+			f.dist[c] = 0;
+			f.parent[c] = -1;
+		}
+	}
+
+	/**
+	 * Gets the best path of a cell from its neighbors (if it is better than its path or
+	 * as good over a neighbor with a lower index, like the search takes it).
+	 *
+	 * @param f the cost field
+	 * @param cell the cell index
+	 */
+	private void reconnect(CostField f, int cell) {
+
+		int w = map.getWidth();
+		int cx = cell % w;
+		int cy = cell / w;
+		if (cell == f.source || !isValidLocation(cx, cy))
+			return;
+
+		boolean connected = f.reached.contains(cell) && f.cost[cell] < Float.MAX_VALUE;
+		float best = connected ? f.cost[cell] : Float.MAX_VALUE;
+		int from = connected ? f.parent[cell] : -1;
+		for (int x = -1; x < 2; x++) {
+			for (int y = -1; y < 2; y++) {
+
+				if ((x == 0) && (y == 0))
+					continue;
+				if (!allowDiagMovement && (x != 0) && (y != 0))
+					continue;
+
+				int xp = x + cx;
+				int yp = y + cy;
+				if (!isValidLocation(xp, yp))
+					continue;
+				int n = yp * w + xp;
+				if (!f.reached.contains(n) || f.cost[n] == Float.MAX_VALUE)
+					continue;
+
+				float c = step(f, n, cx, cy);
+				if (c < best || (c == best && n < from)) {
+					best = c;
+					from = n;
+				}
+			}
+		}
+
+		if (from >= 0 && (!connected || best < f.cost[cell] || from != f.parent[cell])) {
+			f.reached.add(cell);
+			f.cost[cell] = best;
+			f.dist[cell] = f.dist[from] + getDist(from % w, from / w, cx, cy);
+			f.parent[cell] = from;
+			open.update(cell, best);
+		}
+	}
+
+	/**
+	 * Gets the path cost of a cell over a neighbor cell.
+	 *
+	 * @param f the cost field
+	 * @param from the neighbor cell index
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @return the path cost
+	 */
+	private float step(CostField f, int from, int x, int y) {
+
+		int w = map.getWidth();
+		int fx = from % w;
+		int fy = from / w;
+		return f.cost[from] + getDist(fx, fy, x, y) + map.getCost(fx, fy, x, y);
 	}
 
 	/**
 	 * Returns the path to a target location.
 	 * The start point from the map is used.
-	 * From the initialized Dijkstra node list the path can be evaluated by following
-	 * the nodes parent references.
+	 * From the cost field of the start point the path can be evaluated by following
+	 * the parent references of the cells.
 	 *
 	 * @param tx the target x coordinate
 	 * @param ty the target y coordinate
@@ -164,8 +763,9 @@ public class DijkstraPathFinder extends PathFinder {
 
 	/**
 	 * Returns the path from a source to a target location.
-	 * From the initialized Dijkstra node list the path can be evaluated by following
-	 * the nodes parent references.
+	 * From the cost field of the source the path can be evaluated by following
+	 * the parent references of the cells. The field is searched if it is not cached
+	 * for the current map version, it is used for the following path cost and distance values.
 	 *
 	 * @param sx the source x coordinate
 	 * @param sy the source y coordinate
@@ -177,53 +777,324 @@ public class DijkstraPathFinder extends PathFinder {
 	@Override
 	public Path findPath(int sx, int sy, int tx, int ty) {
 
+		// if the target wasn't reachable there is no path. Just return null
+		if (!findField(sx, sy, tx, ty))
+			return null;
+
+		// At this point we've definitely found a path so we can uses the parent
+		// references of the cells to find out way from the target location back
+		// to the start recording the cells on the way.
+		return getPath(field.parent, sx, sy, tx, ty);
+	}
+
+	/**
+	 * Gets the path from a source to a target location as compact path (like findPath,
+	 * but the cells are just copied from the parent references to the reusable buffer).
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @param path the path to set (cleared if there is no path)
+	 * @return true, if there is a path
+	 */
+	public boolean findPath(int sx, int sy, int tx, int ty, CellPath path) {
+
+		if (!findField(sx, sy, tx, ty)) {
+			path.clear();
+			return false;
+		}
+
+		int w = map.getWidth();
+		path.set(field.parent, sy * w + sx, ty * w + tx, w);
+		return true;
+	}
+
+	/**
+	 * Gets the cost field of a source for a path to a target location.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return true, if the target is reachable from the source
+	 */
+	private boolean findField(int sx, int sy, int tx, int ty) {
+
 		// easy first check, if the destination is blocked, we can't get there
 		if (map.blocked(tx, ty))
-			return null;
+			return false;
 
-		// run Dijkstra algorithm if not done yet
-		if (!init) { //TODO init for specific sx sy
-			initPathFinder(sx, sy);
-			init = true;
+		// the paths from the source (cached or searched)
+		int target = ty * map.getWidth() + tx;
+		field = getField(sx, sy, target);
+
+		return field != null && field.reached.contains(target) && field.parent[target] >= 0;
+	}
+
+	/**
+	 * Returns the path from a source to a target location searched coarse to fine.
+	 * If the map has a pyramid, a path is searched on the coarsest level first and the map
+	 * resolution search is restricted to a corridor around the coarse path. If there is no
+	 * coarse path (a coarse cell is blocked if any of its cells is blocked) or no path within
+	 * the corridor, the next finer level is tried, finally the whole map is searched.
+	 * The search is independent of the Dijkstra paths from the map position.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the path or null if the target isn't reachable
+	 */
+	public Path findPathCoarseToFine(int sx, int sy, int tx, int ty) {
+		return searchCoarseToFine(sx, sy, tx, ty) ? getPath(parent, sx, sy, tx, ty) : null;
+	}
+
+	/**
+	 * Gets the path from a source to a target location searched coarse to fine as compact path
+	 * (see findPathCoarseToFine).
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @param path the path to set (cleared if there is no path)
+	 * @return true, if there is a path
+	 */
+	public boolean findPathCoarseToFine(int sx, int sy, int tx, int ty, CellPath path) {
+
+		if (!searchCoarseToFine(sx, sy, tx, ty)) {
+			path.clear();
+			return false;
 		}
 
-		// if the target wasn't reachable there is no path. Just return null
-		if (getNode(tx, ty).parent == null)
-			return null;
+		int w = map.getWidth();
+		path.set(parent, sy * w + sx, ty * w + tx, w);
+		return true;
+	}
 
-		// At this point we've definitely found a path so we can uses the parent
-		// references of the nodes to find out way from the target location back
-		// to the start recording the nodes on the way.
-		Path path = new Path();
-		Node target = getNode(tx, ty);
-		while (target != getNode(sx, sy)) {
-			path.prependStep(target.x, target.y);
-			target = target.parent;
+	/**
+	 * The coarse to fine search from a source to a target location.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return true, if the target was reached (the path is in the parent references)
+	 */
+	private boolean searchCoarseToFine(int sx, int sy, int tx, int ty) {
+
+		coarseToFineCost = Float.MAX_VALUE;
+		if (map.blocked(tx, ty))
+			return false;
+
+		MapPyramid pyramid = map instanceof Map ? ((Map) map).getPyramid() : null;
+		boolean found = false;
+		if (pyramid != null) {
+			for (int l = pyramid.getLevels() - 1; l > 0 && !found; l--) {
+				if (!search(pyramid, l, sx >> l, sy >> l, tx >> l, ty >> l, null))
+					continue;
+				markCorridor(pyramid, l, tx >> l, ty >> l);
+				found = search(pyramid, 0, sx, sy, tx, ty, corridorCells);
+			}
+		}
+
+		if (!found)
+			found = search(pyramid, 0, sx, sy, tx, ty, null);
+		if (found)
+			coarseToFineCost = pathCost[ty * map.getWidth() + tx];
+		return found;
+	}
+
+	/**
+	 * Gets the path cost of the last coarse to fine search.
+	 *
+	 * @return the path cost (Float.MAX_VALUE if there is no path)
+	 */
+	public float getCoarseToFineCost() {
+		return coarseToFineCost;
+	}
+
+	/**
+	 * Gets the number of map cells expanded by the last coarse to fine search.
+	 *
+	 * @return the number of expanded cells
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * The Dijkstra search from a source to a target cell on a pyramid level,
+	 * it stops as soon as the target is reached.
+	 * The source and target cells of the coarse levels are never blocked.
+	 *
+	 * @param pyramid the map pyramid (only used for the coarse levels)
+	 * @param level the pyramid level (0 is the map itself)
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @param cells the cells to search within or null for all cells
+	 * @return true, if the target was reached
+	 */
+	private boolean search(MapPyramid pyramid, int level, int sx, int sy, int tx, int ty, CellSet cells) {
+
+		int w = level == 0 ? map.getWidth() : pyramid.getWidth(level);
+		int h = level == 0 ? map.getHeight() : pyramid.getHeight(level);
+		float[] plane = level == 0 ? null : pyramid.getCostPlane(level);
+		int src = sy * w + sx;
+		int dst = ty * w + tx;
+
+		reached.clear();
+		closed.clear();
+		open.clear();
+		reached.add(src);
+		pathCost[src] = 0;
+		parent[src] = -1;
+		open.update(src, 0);
+
+		boolean found = false;
+		while (!open.isEmpty()) {
+
+			int cell = open.poll();
+			closed.add(cell);
+			if (cell == dst) {
+				found = true;
+				break;
+			}
+
+			int x = cell % w;
+			int y = cell / w;
+			for (int dx = -1; dx < 2; dx++) {
+				for (int dy = -1; dy < 2; dy++) {
+
+					if ((dx == 0) && (dy == 0))
+						continue;
+					if (!allowDiagMovement && (dx != 0) && (dy != 0))
+						continue;
+
+					int xp = x + dx;
+					int yp = y + dy;
+					if (xp < 0 || yp < 0 || xp >= w || yp >= h)
+						continue;
+					int n = yp * w + xp;
+					if (closed.contains(n) || (cells != null && !cells.contains(n)))
+						continue;
+
+					float c;
+					if (level == 0) {
+						if (map.blocked(xp, yp))
+							continue;
+						c = map.getCost(x, y, xp, yp);
+					}
+					else {
+						c = plane[n];
+						if (c == TerrainCostModel.BLOCKED) {
+							if (n != dst)
+								continue;
+							c = 0;
+						}
+					}
+
+					float cost = pathCost[cell] + getDist(x, y, xp, yp) + c;
+					if (reached.add(n) || cost < pathCost[n]) {
+						pathCost[n] = cost;
+						parent[n] = cell;
+						open.update(n, cost);
+					}
+				}
+			}
+		}
+
+		if (level == 0)
+			expanded = closed.size();
+		return found;
+	}
+
+	/**
+	 * Marks the map cells of the corridor around the coarse path found by the last search.
+	 *
+	 * @param pyramid the map pyramid
+	 * @param level the pyramid level of the coarse path
+	 * @param tx the coarse target x coordinate
+	 * @param ty the coarse target y coordinate
+	 */
+	private void markCorridor(MapPyramid pyramid, int level, int tx, int ty) {
+
+		int w = pyramid.getWidth(level);
+		int mw = map.getWidth();
+		int mh = map.getHeight();
+		int scale = 1 << level;
+
+		corridorCells.clear();
+		for (int cell = ty * w + tx; cell >= 0; cell = parent[cell]) {
+			int cx = cell % w;
+			int cy = cell / w;
+			int x0 = Math.max(0, (cx - corridor) * scale);
+			int y0 = Math.max(0, (cy - corridor) * scale);
+			int x1 = Math.min(mw, (cx + corridor + 1) * scale);
+			int y1 = Math.min(mh, (cy + corridor + 1) * scale);
+			for (int y = y0; y < y1; y++)
+				for (int x = x0; x < x1; x++)
+					corridorCells.add(y * mw + x);
 		}
-		path.prependStep(sx,sy);
+	}
+
+	/**
+	 * Gets a path by following the parent references from the target to the source.
+	 *
+	 * @param parent the parent cells (of the path tree or of the last corridor search)
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the path
+	 */
+	private Path getPath(int[] parent, int sx, int sy, int tx, int ty) {
+
+		int w = map.getWidth();
+		Path path = new Path();
+		for (int cell = ty * w + tx; cell != sy * w + sx; cell = parent[cell])
+			path.prependStep(cell % w, cell / w);
+		path.prependStep(sx, sy);
 
 		return path;
 	}
 
 	/**
-	 * Gets the path cost value of a given cell coordinate.
+	 * Gets the number of cells expanded by the last search of a cost field or
+	 * the number of cells expanded again by the last repair.
+	 *
+	 * @return the number of (re-)expanded cells
+	 */
+	public int getReexpanded() {
+		return reexpanded;
+	}
+
+	/**
+	 * Gets the path cost value of a given cell coordinate
+	 * (from the source of the last initPathFinder or findPath call).
 	 *
 	 * @param x the x coordinate
 	 * @param y the y coordinate
-	 * @return the path cost value
+	 * @return the path cost value (Float.MAX_VALUE if there is no path to the cell)
 	 */
 	public float getPathCost(int x, int y) {
-		return getNode(x, y).cost;
+		int cell = y * map.getWidth() + x;
+		return field != null && hasPath(field, cell) ? field.cost[cell] : Float.MAX_VALUE;
 	}
 
 	/**
-	 * Gets the path distance value to a given cell.
+	 * Gets the path distance value to a given cell
+	 * (from the source of the last initPathFinder or findPath call).
 	 *
 	 * @param x the x coordinate
 	 * @param y the y coordinate
-	 * @return the path distance
+	 * @return the path distance (0 if there is no path to the cell)
 	 */
 	public float getPathDist(int x, int y) {
-		return getNode(x, y).dist;
+		int cell = y * map.getWidth() + x;
+		return field != null && hasPath(field, cell) ? field.dist[cell] : 0;
 	}
 }
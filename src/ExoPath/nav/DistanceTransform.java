@@ -0,0 +1,147 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+/**
+ * The exact euclidean distance transform of a byte plane (one unsigned byte per grid cell,
+ * indexed y*width+x): the distance of each cell to the nearest feature cell (value above
+ * a threshold) in cells. The transform is separable and linear in the number of cells
+ * (Felzenszwalb/Huttenlocher): the squared distances within the columns are computed by
+ * a downward and an upward pass, then each row takes the lower envelope of the parabolas
+ * rooted at the column distances. All working buffers are allocated once.
+ * Cells outside of the grid are no features.
+ */
+public class DistanceTransform {
+
+	/** The grid width. */
+	private final int width;
+
+	/** The squared distances within the columns. */
+	private final float[] column;
+
+	/** The row of the last feature cell per column (-1 for none). */
+	private final int[] last;
+
+	/** The columns of the parabolas of the lower envelope. */
+	private final int[] site;
+
+	/** The columns where the parabolas of the lower envelope begin. */
+	private final float[] from;
+
+	/**
+	 * Instantiates a new distance transform for planes of the given size.
+	 *
+	 * @param width the grid width
+	 * @param height the grid height
+	 */
+	public DistanceTransform(int width, int height) {
+
+		this.width = width;
+		column = new float[width * height];
+		last = new int[width];
+		site = new int[width];
+		from = new float[width];
+	}
+
+	/**
+	 * Computes the distances of the cells of a region. The feature cells are searched within
+	 * the given range around the region, so the distances are exact up to the range,
+	 * larger distances are saturated to the range.
+	 *
+	 * @param src the source plane
+	 * @param threshold the maximum value of the cells which are no features
+	 * @param dst the distance plane (only the region is written)
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 * @param range the maximum distance
+	 */
+	public void transform(byte[] src, int threshold, float[] dst, int x0, int y0, int x1, int y1, float range) {
+
+		if (x0 >= x1 || y0 >= y1)
+			return;
+
+		// the region with the range around it
+		int height = column.length / width;
+		int r = (int) Math.ceil(range);
+		int wx0 = Math.max(0, x0 - r), wy0 = Math.max(0, y0 - r);
+		int wx1 = Math.min(width, x1 + r), wy1 = Math.min(height, y1 + r);
+		float inf = Float.POSITIVE_INFINITY;
+
+		// the column distances to the features above (row by row for the cache)
+		for (int x = wx0; x < wx1; x++)
+			last[x] = -1;
+		for (int y = wy0; y < y1; y++) {
+			int o = y * width;
+			for (int x = wx0; x < wx1; x++) {
+				if ((src[o + x] & 0xff) > threshold)
+					last[x] = y;
+				int d = y - last[x];
+				column[o + x] = last[x] < 0 ? inf : d * d;
+			}
+		}
+
+		// and below
+		for (int x = wx0; x < wx1; x++)
+			last[x] = -1;
+		for (int y = wy1 - 1; y >= y0; y--) {
+			int o = y * width;
+			for (int x = wx0; x < wx1; x++) {
+				if ((src[o + x] & 0xff) > threshold)
+					last[x] = y;
+				int d = last[x] - y;
+				if (last[x] >= 0 && d * d < column[o + x])
+					column[o + x] = d * d;
+			}
+		}
+
+		for (int y = y0; y < y1; y++) {
+			int o = y * width;
+
+			// the lower envelope of the parabolas (the columns without features have none)
+			int k = -1;
+			for (int q = wx0; q < wx1; q++) {
+				float fq = column[o + q];
+				if (fq == inf)
+					continue;
+				float s = -inf;
+				while (k >= 0) {
+					int p = site[k];
+					s = ((fq + q * q) - (column[o + p] + p * p)) / (2 * (q - p));
+					if (s > from[k])
+						break;
+					k--;
+				}
+				site[++k] = q;
+				from[k] = k == 0 ? -inf : s;
+			}
+
+			// the distances of the region cells
+			if (k < 0) {
+				for (int q = x0; q < x1; q++)
+					dst[o + q] = range;
+				continue;
+			}
+			int n = k;
+			k = 0;
+			for (int q = x0; q < x1; q++) {
+				while (k < n && from[k + 1] < q)
+					k++;
+				int p = site[k];
+				float d = (float) Math.sqrt((q - p) * (q - p) + column[o + p]);
+				dst[o + q] = d < range ? d : range;
+			}
+		}
+	}
+}
@@ -0,0 +1,367 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The persistent terrain map for the whole mission area.
+ * The map uses the global grid of the local maps (aligned to the map resolution) and is divided
+ * into square tiles with the same terrain layers as a local map. The tiles are stored in a memory
+ * mapped file, the recently used tiles are held as copies on the heap (LRU).
+ * Local scans are fused into the global map and unseen cells of a local map can be seeded from it.
+ */
+public class GlobalTerrainMap {
+
+	/** The tile size (number of cells per side). */
+	public static final int TILE_SIZE = 64;
+
+	/** The number of bytes of a stored tile. */
+	private static final int TILE_BYTES = TerrainLayers.LAYERS * TILE_SIZE * TILE_SIZE;
+
+	/** The number of tiles mapped together as one file region. */
+	private static final int CHUNK_TILES = 4096;
+
+	/** The file header size (identifier and grid dimensions). */
+	private static final int HEADER_SIZE = 64;
+
+	/** The file identifier. */
+	private static final int MAGIC = 0x45584f54; // "EXOT"
+
+	/**
+	 * A tile held on the heap.
+	 */
+	private static class Tile {
+
+		/** The tile id (index within the tile grid). */
+		int id;
+
+		/** The terrain layers of the tile. */
+		TerrainLayers.Heap layers = (TerrainLayers.Heap) TerrainLayers.allocate(TILE_SIZE, TILE_SIZE);
+
+		/** The flag for changed data which are not written to the file yet. */
+		boolean modified;
+
+		/** The last access (for the LRU). */
+		long used;
+	}
+
+	/** The global grid column of the first cell. */
+	private final int minX;
+
+	/** The global grid row of the first cell. */
+	private final int minY;
+
+	/** The number of tile columns. */
+	private final int tilesX;
+
+	/** The number of tile rows. */
+	private final int tilesY;
+
+	/** The tile store file. */
+	private final RandomAccessFile file;
+
+	/** The mapped file regions (mapped on first use). */
+	private final MappedByteBuffer[] chunks;
+
+	/** The hot tiles by tile id (null if not on the heap). */
+	private final Tile[] hot;
+
+	/** The heap tile objects (the LRU entries). */
+	private final Tile[] cache;
+
+	/** The number of tiles in use within the cache. */
+	private int cached = 0;
+
+	/** The access counter for the LRU. */
+	private long clock = 0;
+
+	/** Row buffers for the terrain layers of a local map. */
+	private byte[][] rows = new byte[TerrainLayers.LAYERS][0];
+
+	/** The parameter values of a cell to fuse. */
+	private final byte[] values = new byte[TerrainLayers.LAYERS];
+
+	/**
+	 * Opens (or creates) a global terrain map stored in the given file.
+	 * The stored terrain is reused if the file was created for the same area.
+	 *
+	 * @param f the tile store file
+	 * @param minX the global grid column of the first cell
+	 * @param minY the global grid row of the first cell
+	 * @param width the number of global grid columns
+	 * @param height the number of global grid rows
+	 * @param cacheSize the number of tiles held on the heap
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public GlobalTerrainMap(File f, int minX, int minY, int width, int height, int cacheSize) throws IOException {
+
+		this.minX = minX;
+		this.minY = minY;
+		this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+		int tiles = tilesX * tilesY;
+		chunks = new MappedByteBuffer[(tiles + CHUNK_TILES - 1) / CHUNK_TILES];
+		hot = new Tile[tiles];
+		cache = new Tile[cacheSize];
+
+		if (f.getParentFile() != null)
+			f.getParentFile().mkdirs();
+		file = new RandomAccessFile(f, "rw");
+
+		// check the header, a store for another area is cleared
+		boolean valid = file.length() == HEADER_SIZE + (long) tiles * TILE_BYTES;
+		if (valid) {
+			file.seek(0);
+			valid = file.readInt() == MAGIC && file.readInt() == TILE_SIZE &&
+					file.readInt() == minX && file.readInt() == minY &&
+					file.readInt() == tilesX && file.readInt() == tilesY;
+		}
+		if (!valid) {
+			file.setLength(0);
+			file.setLength(HEADER_SIZE + (long) tiles * TILE_BYTES); // zero filled, no data
+			file.seek(0);
+			file.writeInt(MAGIC);
+			file.writeInt(TILE_SIZE);
+			file.writeInt(minX);
+			file.writeInt(minY);
+			file.writeInt(tilesX);
+			file.writeInt(tilesY);
+		}
+	}
+
+	/**
+	 * Gets the stored terrain layers of a tile (within the mapped file).
+	 *
+	 * @param id the tile id
+	 * @return the stored terrain layers
+	 * @throws IOException if the file region can't be mapped
+	 */
+	private TerrainLayers stored(int id) throws IOException {
+
+		int c = id / CHUNK_TILES;
+		if (chunks[c] == null) {
+			long size = (long) Math.min(CHUNK_TILES, hot.length - c * CHUNK_TILES) * TILE_BYTES;
+			chunks[c] = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+					HEADER_SIZE + (long) c * CHUNK_TILES * TILE_BYTES, size);
+		}
+		ByteBuffer buf = chunks[c].duplicate();
+		buf.position((id % CHUNK_TILES) * TILE_BYTES);
+		return TerrainLayers.wrap(buf, TILE_SIZE, TILE_SIZE);
+	}
+
+	/**
+	 * Gets a tile on the heap, the least recently used tile is written back and replaced if needed.
+	 *
+	 * @param id the tile id
+	 * @return the heap tile
+	 */
+	private Tile tile(int id) {
+
+		Tile t = hot[id];
+		if (t == null) {
+			if (cached < cache.length)
+				t = cache[cached++] = new Tile();
+			else {
+				t = cache[0];
+				for (Tile c : cache)
+					if (c.used < t.used)
+						t = c;
+				writeBack(t);
+				hot[t.id] = null;
+			}
+			t.id = id;
+			try {
+				TerrainLayers src = stored(id);
+				for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+					src.get(prop, 0, t.layers.plane(prop), 0, TILE_SIZE * TILE_SIZE);
+			} catch (IOException e) {
+				e.printStackTrace();
+				t.layers.clear();
+			}
+			hot[id] = t;
+		}
+		t.used = ++clock;
+		return t;
+	}
+
+	/**
+	 * Writes a modified heap tile to the file.
+	 *
+	 * @param t the tile
+	 */
+	private void writeBack(Tile t) {
+
+		if (!t.modified)
+			return;
+		try {
+			TerrainLayers dst = stored(t.id);
+			for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+				dst.set(prop, 0, t.layers.plane(prop), 0, TILE_SIZE * TILE_SIZE);
+			t.modified = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes all modified heap tiles to the file.
+	 */
+	public void flush() {
+		for (int i = 0; i < cached; i++)
+			writeBack(cache[i]);
+	}
+
+	/**
+	 * Flushes the data and closes the tile store file.
+	 */
+	public void close() {
+		flush();
+		for (MappedByteBuffer chunk : chunks)
+			if (chunk != null)
+				chunk.force();
+		try {
+			file.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Checks if a global grid cell is within the area of the map.
+	 *
+	 * @param gx the global grid column
+	 * @param gy the global grid row
+	 * @return true, if the cell is part of the map
+	 */
+	public boolean contains(int gx, int gy) {
+		int x = gx - minX;
+		int y = gy - minY;
+		return x >= 0 && y >= 0 && x < tilesX * TILE_SIZE && y < tilesY * TILE_SIZE;
+	}
+
+	/**
+	 * Gets the terrain parameter of a global grid cell.
+	 *
+	 * @param gx the global grid column
+	 * @param gy the global grid row
+	 * @param prop the terrain parameter index
+	 * @return the parameter value (0 for cells outside of the map)
+	 */
+	public int getTerrain(int gx, int gy, int prop) {
+
+		if (!contains(gx, gy))
+			return 0;
+		int x = gx - minX;
+		int y = gy - minY;
+		Tile t = tile(y / TILE_SIZE * tilesX + x / TILE_SIZE);
+		return t.layers.get(prop, y % TILE_SIZE * TILE_SIZE + x % TILE_SIZE);
+	}
+
+	/**
+	 * Sets all terrain parameters of a global grid cell.
+	 *
+	 * @param gx the global grid column
+	 * @param gy the global grid row
+	 * @param values the parameter values (indexed by the terrain parameter index)
+	 */
+	private void setTerrain(int gx, int gy, byte[] values) {
+
+		int x = gx - minX;
+		int y = gy - minY;
+		Tile t = tile(y / TILE_SIZE * tilesX + x / TILE_SIZE);
+		int idx = y % TILE_SIZE * TILE_SIZE + x % TILE_SIZE;
+		for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+			t.layers.set(prop, idx, values[prop] & 0xff);
+		t.modified = true;
+	}
+
+	/**
+	 * Allocates the row buffers for a local map width.
+	 *
+	 * @param width the local map width
+	 */
+	private void allocRows(int width) {
+		if (rows[0].length < width)
+			rows = new byte[TerrainLayers.LAYERS][width];
+	}
+
+	/**
+	 * Fuses the cells of the current scan of a local map (the valid cells with range point data)
+	 * into the global map. The modified tiles are written to the file.
+	 *
+	 * @param map the local map
+	 */
+	public void fuse(Map map) {
+
+		allocRows(map.getWidth());
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+				map.getTerrainRow(prop, y, rows[prop]);
+			int gy = map.getOriginY() + y;
+			for (int x = 0; x < map.getWidth(); x++) {
+				int gx = map.getOriginX() + x;
+				if (rows[Map.VAL][x] != 2 || map.getRangePtIdx(x, y) < 0 || !contains(gx, gy))
+					continue;
+				for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+					values[prop] = rows[prop][x];
+				setTerrain(gx, gy, values);
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Seeds the cells of a local map without data (valid value 0) from the global map.
+	 * The cell costs of the local map are not updated, that is left to the caller.
+	 *
+	 * @param map the local map
+	 * @return the seeded rows (null, if no cell was seeded)
+	 */
+	public Rectangle seed(Map map) {
+
+		allocRows(map.getWidth());
+		Rectangle seeded = null;
+		for (int y = 0; y < map.getHeight(); y++) {
+			int gy = map.getOriginY() + y;
+			map.getTerrainRow(Map.VAL, y, rows[Map.VAL]);
+			boolean rowSeeded = false;
+			for (int x = 0; x < map.getWidth(); x++) {
+				int gx = map.getOriginX() + x;
+				if (rows[Map.VAL][x] != 0 || getTerrain(gx, gy, Map.VAL) == 0)
+					continue;
+				if (!rowSeeded) {
+					for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+						if (prop != Map.VAL)
+							map.getTerrainRow(prop, y, rows[prop]);
+					rowSeeded = true;
+				}
+				for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+					rows[prop][x] = (byte) getTerrain(gx, gy, prop);
+			}
+			if (rowSeeded) {
+				for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+					map.loadTerrainRow(prop, y, rows[prop]);
+				if (seeded == null)
+					seeded = new Rectangle(0, y, map.getWidth(), 1);
+				seeded.height = y + 1 - seeded.y; // the rows are seeded in order
+			}
+		}
+		return seeded;
+	}
+}
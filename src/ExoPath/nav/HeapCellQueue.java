@@ -0,0 +1,118 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.Arrays;
+
+/**
+ * A cell queue as indexed 4-ary heap. The heap position of each cell is kept,
+ * so a key is decreased in place (O(log n)) and contains is O(1).
+ */
+public class HeapCellQueue implements CellQueue {
+
+	/** The heap of cells. */
+	private final int[] heap;
+
+	/** The heap position of each cell (-1 if not queued). */
+	private final int[] pos;
+
+	/** The key of each cell. */
+	private final float[] key;
+
+	/** The number of queued cells. */
+	private int size = 0;
+
+	/**
+	 * Instantiates a new heap cell queue.
+	 *
+	 * @param capacity the number of grid cells
+	 */
+	public HeapCellQueue(int capacity) {
+		heap = new int[capacity];
+		pos = new int[capacity];
+		key = new float[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			pos[heap[i]] = -1;
+		size = 0;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean contains(int cell) {
+		return pos[cell] >= 0;
+	}
+
+	@Override
+	public void update(int cell, float k) {
+
+		int i = pos[cell];
+		if (i < 0)
+			i = size++;
+		key[cell] = k;
+
+		// move the cell up to its place
+		while (i > 0) {
+			int p = (i - 1) >> 2;
+			int pc = heap[p];
+			if (key[pc] <= k)
+				break;
+			heap[i] = pc;
+			pos[pc] = i;
+			i = p;
+		}
+		heap[i] = cell;
+		pos[cell] = i;
+	}
+
+	@Override
+	public int poll() {
+
+		int top = heap[0];
+		pos[top] = -1;
+		int cell = heap[--size];
+		if (size == 0)
+			return top;
+		float k = key[cell];
+
+		// move the last cell down from the root
+		int i = 0;
+		while (true) {
+			int c = 4 * i + 1;
+			if (c >= size)
+				break;
+			int m = c;
+			int e = Math.min(c + 4, size);
+			for (int j = c + 1; j < e; j++)
+				if (key[heap[j]] < key[heap[m]])
+					m = j;
+			if (k <= key[heap[m]])
+				break;
+			heap[i] = heap[m];
+			pos[heap[i]] = i;
+			i = m;
+		}
+		heap[i] = cell;
+		pos[cell] = i;
+
+		return top;
+	}
+}
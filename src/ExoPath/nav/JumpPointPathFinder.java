@@ -0,0 +1,239 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import org.newdawn.slick.util.pathfinding.Path;
+import org.newdawn.slick.util.pathfinding.PathFinderMap;
+
+/**
+ * A path finder implementation that uses A* with Jump Point Search. Within regions of
+ * uniform cell cost the symmetric paths are pruned: the search jumps along straight and
+ * diagonal lines and only stops at jump points (cells with forced neighbors next to blocked
+ * cells, cells next to a different cell cost and the target). Cells with blocked neighbors
+ * or neighbors of a different cost are expanded in all directions, so the paths are as good
+ * as the A* paths on any map, the search is just faster on uniform terrain.
+ * The cost of a cell is taken as the cost of entering it (as for Map, the cost does not depend
+ * on the cell it is entered from). Without diagonal movement the plain A* search is used.
+ */
+public class JumpPointPathFinder extends AStarPathFinder {
+
+	/** The neighborhood of a cell: all neighbors are traversable with the same cost. */
+	private static final int UNIFORM = 0;
+
+	/** The neighborhood of a cell: some neighbors are blocked, all others have the same cost. */
+	private static final int OBSTRUCTED = 1;
+
+	/** The neighborhood of a cell: some neighbors have a different cost. */
+	private static final int MIXED = 2;
+
+	/** The neighborhood of the classified cells (the jumps pass the cells several times). */
+	private final byte[] hood;
+
+	/** The cells classified by the current search. */
+	private final CellSet classified;
+
+	/**
+	 * Create a path finder.
+	 *
+	 * @param map The map to be searched
+	 */
+	public JumpPointPathFinder(PathFinderMap map) {
+		this(map, new HeapCellQueue(map.getWidth() * map.getHeight()));
+	}
+
+	/**
+	 * Create a path finder with a given cell queue.
+	 *
+	 * @param map The map to be searched
+	 * @param open The queue of the open cells (for all map cells)
+	 */
+	public JumpPointPathFinder(PathFinderMap map, CellQueue open) {
+
+		super(map, true, open);
+		hood = new byte[map.getWidth() * map.getHeight()];
+		classified = new CellSet(hood.length);
+	}
+
+	/**
+	 * Returns the path from a source to a target location.
+	 *
+	 * @param sx the source x coordinate
+	 * @param sy the source y coordinate
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the path or null if the target isn't reachable
+	 * @see AStarPathFinder#findPath(int, int, int, int)
+	 */
+	@Override
+	public Path findPath(int sx, int sy, int tx, int ty) {
+
+		classified.clear();
+		return super.findPath(sx, sy, tx, ty);
+	}
+
+	/**
+	 * Expands a cell: jumps into all directions for the source and cells next to blocked cells
+	 * or a different cost, otherwise just into the natural directions of the movement from the parent.
+	 *
+	 * @param cell the cell index
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @see AStarPathFinder#expand(int, int, int)
+	 */
+	@Override
+	protected void expand(int cell, int tx, int ty) {
+
+		if (!allowDiagMovement) {
+			super.expand(cell, tx, ty);
+			return;
+		}
+
+		int w = map.getWidth();
+		int cx = cell % w;
+		int cy = cell / w;
+		int p = parent[cell];
+
+		if (p < 0 || neighborhood(cx, cy) != UNIFORM) {
+			for (int x = -1; x < 2; x++)
+				for (int y = -1; y < 2; y++)
+					if (x != 0 || y != 0)
+						jumpFrom(cell, x, y, tx, ty);
+			return;
+		}
+
+		// the natural neighbors (no forced ones within a uniform neighborhood)
+		int dx = Integer.signum(cx - p % w);
+		int dy = Integer.signum(cy - p / w);
+		jumpFrom(cell, dx, dy, tx, ty);
+		if (dx != 0 && dy != 0) {
+			jumpFrom(cell, dx, 0, tx, ty);
+			jumpFrom(cell, 0, dy, tx, ty);
+		}
+	}
+
+	/**
+	 * Jumps from a cell into a direction and updates the path to the found jump point.
+	 *
+	 * @param cell the cell index
+	 * @param dx the x direction
+	 * @param dy the y direction
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 */
+	private void jumpFrom(int cell, int dx, int dy, int tx, int ty) {
+
+		int w = map.getWidth();
+		int x = cell % w;
+		int y = cell / w;
+		int j = jump(x, y, dx, dy, tx, ty);
+		if (j < 0)
+			return;
+
+		// the path cost along the line to the jump point
+		int jx = j % w;
+		int jy = j / w;
+		float cost = pathCost[cell];
+		while (x != jx || y != jy) {
+			cost += getDist(x, y, x + dx, y + dy) + map.getCost(x, y, x + dx, y + dy);
+			x += dx;
+			y += dy;
+		}
+		relax(cell, jx, jy, cost, tx, ty);
+	}
+
+	/**
+	 * Searches the next jump point from a cell into a direction.
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @param dx the x direction
+	 * @param dy the y direction
+	 * @param tx the target x coordinate
+	 * @param ty the target y coordinate
+	 * @return the cell index of the jump point or -1 if there is none
+	 */
+	private int jump(int x, int y, int dx, int dy, int tx, int ty) {
+
+		while (true) {
+			x += dx;
+			y += dy;
+			if (!isValidLocation(x, y))
+				return -1;
+
+			int cell = y * map.getWidth() + x;
+			if (x == tx && y == ty)
+				return cell;
+
+			int n = neighborhood(x, y);
+			if (n == MIXED || (n == OBSTRUCTED && forced(x, y, dx, dy)))
+				return cell;
+
+			// a diagonal move stops if a straight jump finds a jump point
+			if (dx != 0 && dy != 0 && (jump(x, y, dx, 0, tx, ty) >= 0 || jump(x, y, 0, dy, tx, ty) >= 0))
+				return cell;
+		}
+	}
+
+	/**
+	 * Checks if a cell has forced neighbors for a movement direction (neighbors, which can't
+	 * be reached as cheap without passing the cell because of a blocked cell).
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @param dx the x direction
+	 * @param dy the y direction
+	 * @return true, if the cell has forced neighbors
+	 */
+	private boolean forced(int x, int y, int dx, int dy) {
+
+		if (dx != 0 && dy != 0)
+			return (!isValidLocation(x - dx, y) && isValidLocation(x - dx, y + dy))
+				|| (!isValidLocation(x, y - dy) && isValidLocation(x + dx, y - dy));
+		if (dx != 0)
+			return (!isValidLocation(x, y + 1) && isValidLocation(x + dx, y + 1))
+				|| (!isValidLocation(x, y - 1) && isValidLocation(x + dx, y - 1));
+		return (!isValidLocation(x + 1, y) && isValidLocation(x + 1, y + dy))
+			|| (!isValidLocation(x - 1, y) && isValidLocation(x - 1, y + dy));
+	}
+
+	/**
+	 * Classifies the neighborhood of a cell.
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @return UNIFORM, OBSTRUCTED or MIXED
+	 */
+	private int neighborhood(int x, int y) {
+
+		int cell = y * map.getWidth() + x;
+		if (classified.contains(cell))
+			return hood[cell];
+
+		float c = map.getCost(x, y, x, y);
+		int n = UNIFORM;
+		for (int xp = x - 1; xp <= x + 1 && n != MIXED; xp++) {
+			for (int yp = y - 1; yp <= y + 1; yp++) {
+				if (!isValidLocation(xp, yp))
+					n = OBSTRUCTED;
+				else if (map.getCost(x, y, xp, yp) != c) {
+					n = MIXED;
+					break;
+				}
+			}
+		}
+
+		classified.add(cell);
+		hood[cell] = (byte) n;
+		return n;
+	}
+}
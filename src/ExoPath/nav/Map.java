@@ -13,21 +13,19 @@
 package exopath.nav;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.imageio.ImageIO;
 
 import org.newdawn.slick.util.pathfinding.PathFinderMap;
 
-import com.jhlabs.image.ConvolveFilter;
-import com.jhlabs.image.MaximumFilter;
-
-import exopath.nav.NavigationTask.Position;
-
 /**
  * The terrain map for the rover environment.
  * The path finder uses this map object to check traversability of the map cells.
@@ -55,23 +53,122 @@ public class Map implements PathFinderMap {
 	/** The map height. */
 	private final int height;
 
-	/** The grid that holds the values for all the terrain parameters. */
-	private final byte[][][] terrain;
+	/** The layers that hold the values for all the terrain parameters (one plane per parameter). */
+	private final TerrainLayers terrain;
 
-	/** Indicator if a given tile has been visited during the search. */
-	private boolean[][] visited;
+	/** The set of cells that have been visited during the search. */
+	private final CellSet visited;
 
 	/** The range point index to map the terrain grid to the environment data */
-	private final int[][] rangePtIdx;
+	private final int[] rangePtIdx;
 
 	/** The actual position. */
 	private Point position;
 
-	/** A preallocated image for filtering. */
-	BufferedImage filtImg1;
+	/** The filter operations for the terrain planes. */
+	private final RasterFilter filter;
+
+	/** A preallocated plane for the obstacle samples and its dilation. */
+	private final byte[] obsPlane;
+
+	/** A preallocated plane for the hazard samples. */
+	private final byte[] hazPlane;
+
+	/** A preallocated plane marking cells without range point (1) and its dilation. */
+	private final byte[] missPlane;
+
+	/** A preallocated plane for the filtered obstacle values. */
+	private final byte[] obsFilt;
+
+	/** A preallocated plane for the filtered hazard values. */
+	private final byte[] hazFilt;
+
+	/** The cost model to evaluate the traversability and the movement cost of the cells. */
+	private TerrainCostModel costModel = new TerrainCostModel();
+
+	/** The compiled movement cost for each cell (blocked cells have an infinite cost). */
+	private final float[] cost;
+
+	/** The distance of each cell to the nearest obstacle (in cells, saturated to the clearance range). */
+	private final float[] clearance;
+
+	/** The distance transform for the clearance. */
+	private final DistanceTransform transform;
+
+	/** The obstacle values in map coordinates (the input of the distance transform). */
+	private final byte[] obsMap;
+
+	/** The version of the cost plane, counted up with each change (for cached path searches). */
+	private int version = 0;
+
+	/** The cells whose cost changed after the version changesFrom (for incremental path searches). */
+	private final CellSet changes;
+
+	/** The version the recorded cost changes start from. */
+	private int changesFrom = 0;
+
+	/** A preallocated row for the new cell costs. */
+	private final float[] costRow;
+
+	/** The downsampled cost planes for coarse to fine path planning (optional). */
+	private MapPyramid pyramid;
+
+	/** The flag for the incremental mode (just the regions touched by the scans are updated). */
+	private boolean incremental = true;
+
+	/** The grid region touched by the last scan (range points, filter halo and position area). */
+	private final Rectangle dirty;
+
+	/** The grid region covered by the range points of the current scan. */
+	private final Rectangle scan = new Rectangle();
 
-	/** Another preallocated image for filtering. */
-	BufferedImage filtImg2;
+	/** The grid region of the current scan including the filter halo. */
+	private final Rectangle halo = new Rectangle();
+
+	/** The fork join pool for the parallel mode of setData (null in the serial mode). */
+	private ForkJoinPool pool;
+
+	/** The row bands of the parallel mode. */
+	private Band[] bands;
+
+	/** The number of rows per band. */
+	private int bandRows;
+
+	/** The range point indices ordered by band (the points of a band keep their order). */
+	private int[] binned = new int[0];
+
+	/** The first binned index of each band (and the number of binned points at the end). */
+	private int[] bandStart;
+
+	/** The range points of the scan processed by the bands. */
+	private ScanFrame scanFrame;
+
+	/** The plane for the horizontal obstacle dilation pass of the parallel mode. */
+	private byte[] obsRows;
+
+	/** The plane for the horizontal dilation pass of the cells without data of the parallel mode. */
+	private byte[] missRows;
+
+	/** The global terrain map to fuse the scans into and to seed cells without data from (optional). */
+	private GlobalTerrainMap global;
+
+	/** The flag for the scrolling mode (the terrain layers are a ring buffer moving with the origin). */
+	private boolean scrolling = false;
+
+	/** The flag if the origin was set (since the scrolling mode was enabled). */
+	private boolean hasOrigin = false;
+
+	/** The global grid column of the map cell 0,0. */
+	private int originX;
+
+	/** The global grid row of the map cell 0,0. */
+	private int originY;
+
+	/** The terrain layer column of the map cell 0,0 (the ring buffer offset). */
+	private int offX = 0;
+
+	/** The terrain layer row of the map cell 0,0 (the ring buffer offset). */
+	private int offY = 0;
 
 	/**
 	 * Create and init a new map.
@@ -80,97 +177,776 @@ public class Map implements PathFinderMap {
 	 * @param height the map height
 	 */
 	public Map(int width, int height) {
+		this(width, height, false);
+	}
+
+	/**
+	 * Create and init a new map.
+	 *
+	 * @param width the map width
+	 * @param height the map height
+	 * @param direct true, if the terrain layers should be held outside of the java heap
+	 */
+	public Map(int width, int height, boolean direct) {
 
 		this.width = width;
 		this.height = height;
 
-		terrain = new byte[width][height][5];
-		rangePtIdx = new int[width][height];
+		terrain = direct ? TerrainLayers.allocateDirect(width, height) : TerrainLayers.allocate(width, height);
+		rangePtIdx = new int[width * height];
+		visited = new CellSet(width * height);
+		cost = new float[width * height];
+		Arrays.fill(cost, TerrainCostModel.BLOCKED); // no data yet
+		changes = new CellSet(width * height);
+		costRow = new float[width];
+		clearance = new float[width * height];
+		Arrays.fill(clearance, getClearanceRange()); // no obstacles yet
+		transform = new DistanceTransform(width, height);
+		obsMap = new byte[width * height];
 
 		position = new Point(width/2, height/2);
 
-		filtImg1 = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		filtImg2 = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		filter = new RasterFilter(width, height);
+		obsPlane = new byte[width * height];
+		hazPlane = new byte[width * height];
+		missPlane = new byte[width * height];
+		obsFilt = new byte[width * height];
+		hazFilt = new byte[width * height];
+
+		dirty = new Rectangle(0, 0, width, height); // clear everything with the first scan
 	}
 
 	/**
 	 * Sets the data and update the grid values.
 	 * The filter steps are done for the different terrain parameters.
 	 *
-	 * @param rangePoints the new data
+	 * @param frame the new data (with the cell indices for this map)
 	 */
-	public void setData(List<Position> rangePoints) {
+	public void setData(ScanFrame frame) {
 
-//		saveRangeMap(rangePoints);
+//		saveRangeMap(frame);
 
-		// clear old data
-		clearImages();
-		clearTerrain();
+		// clear old data (in incremental mode just the region touched by the last scan)
+		// (in scrolling mode the terrain is kept until new data are available)
+		if (!incremental)
+			dirty.setBounds(0, 0, width, height);
+		clearPlanes(dirty);
+		if (!scrolling)
+			clearTerrain(dirty);
+		clearRangePtIdx(dirty);
 		clearVisited();
+		int cx0 = dirty.x, cy0 = dirty.y;
+		int cx1 = dirty.x + dirty.width, cy1 = dirty.y + dirty.height;
+
+		// the region to filter: the bounding box of the range points (and a halo for the dilation)
+		int x0 = frame.minX, y0 = frame.minY, x1 = frame.maxX, y1 = frame.maxY;
+		if (!incremental || x0 >= x1) {
+			x0 = 0; y0 = 0;
+			x1 = width; y1 = height;
+		}
+		scan.setBounds(x0, y0, x1 - x0, y1 - y0);
+		halo.setBounds(Math.max(0, x0 - 1), Math.max(0, y0 - 1), 0, 0);
+		halo.add(Math.min(width, x1 + 1), Math.min(height, y1 + 1));
 
-		// set the obstacle values to an image for dilation filter
-		for (Position p : rangePoints)
-			filtImg1.getRaster().setSample(p.mapX, p.mapY, 1, p.obs);
+		if (pool != null) {
+			// the same steps on row bands in parallel
+			setDataParallel(frame);
+			finishData(cx0, cy0, cx1, cy1);
+			return;
+		}
 
-		// the filter op
-		MaximumFilter mf = new MaximumFilter();
-		mf.filter(filtImg1, filtImg2);
+		// set the obstacle and hazard samples and mark the cells with range points
+		for (int i = 0; i < frame.size; i++) {
+			int idx = frame.cell[i];
+			if (idx >= 0)
+				setSample(frame, i, idx);
+		}
 
-		// set all valid points and the hazard value to an image for blur filter
-		for (int y = 0; y < height; y++)
-			for (int x = 0; x < width; x++)
-				filtImg2.getRaster().setSample(x, y, 0, 2); // init the valid index with 2
+		// the filter ops: dilate the obstacles, blur obstacles and hazard
+		// and dilate the cells without data (to filter out cells at the data boundary)
+		// (the filtered values are needed for the range point cells only,
+		// the halo around them is required for the dilated obstacles to blur)
+		filter.dilate(obsPlane, obsPlane, 1, halo.x, halo.y, halo.x + halo.width, halo.y + halo.height);
+		filter.blur(obsPlane, obsFilt, RasterFilter.BLUR_WEIGHT, x0, y0, x1, y1);
+		filter.blur(hazPlane, hazFilt, RasterFilter.BLUR_WEIGHT, x0, y0, x1, y1);
+		filter.dilate(missPlane, missPlane, 1, x0, y0, x1, y1);
 
-		for (Position p : rangePoints) {
-			filtImg2.getRaster().setSample(p.mapX, p.mapY, 0, 0); // mark as valid by 0
-			filtImg2.getRaster().setSample(p.mapX, p.mapY, 2, p.haz); // set hazard
+		// fill the terrain grid data
+		for (int i = 0; i < frame.size; i++) {
+			int idx = frame.cell[i];
+			if (idx >= 0)
+				fillCell(frame, i, idx);
 		}
 
-		// the filter op
-		float[] kernel = new float[]{
-				0.3f, 0.3f, 0.3f,
-				0.3f,    1, 0.3f,
-				0.3f, 0.3f, 0.3f,
-		};
-	    ConvolveFilter cf = new ConvolveFilter(kernel); // convolve kernel for blurring
-	    cf.setEdgeAction(ConvolveFilter.ZERO_EDGES);
-        cf.filter(filtImg2, filtImg1);
-
-        // fill the terrain grid data
-		int[] pix = new int[3];
-        for (int i = 0; i < rangePoints.size(); i++) {
-        	Position p = rangePoints.get(i);
-        	filtImg1.getRaster().getPixel(p.mapX, p.mapY, pix);
-        	terrain[p.mapX][p.mapY][SLP] = (byte)p.slp; // slope value
-        	terrain[p.mapX][p.mapY][GRD] = (byte)p.grd; // ground value
-        	terrain[p.mapX][p.mapY][OBS] = (byte)pix[1]; // filtered obstacle value
-        	terrain[p.mapX][p.mapY][HAZ] = (byte)pix[2]; // filtered hazard value
-        	// after filtering points are valid with the value 0,
-        	// they will be marked with 2, 1 means available as range point but filtered out
-        	terrain[p.mapX][p.mapY][VAL] = (byte)(pix[0] == 0 ? 2 : 1);
-        	rangePtIdx[p.mapX][p.mapY] = i; // remember the range point index
-        }
+		finishData(cx0, cy0, cx1, cy1);
+	}
+
+	/**
+	 * The last steps of setData after the terrain grid was filled.
+	 *
+	 * @param cx0 the first column of the cleared region
+	 * @param cy0 the first row of the cleared region
+	 * @param cx1 the column after the cleared region
+	 * @param cy1 the row after the cleared region
+	 */
+	private void finishData(int cx0, int cy0, int cx1, int cy1) {
 
         // workaround for missing data directly for the position
 		for (int h = height/2, y = h-4 ; y < h+4; y++)
-			for (int w = width/2, x = w-4; x < w+4; x++)
-				terrain[x][y][VAL] = 2;
+			fillRow(VAL, y, width/2 - 4, width/2 + 4, 2);
+
+		// remember the touched region to clear it with the next scan
+		dirty.setBounds(halo);
+		dirty.add(width/2 - 4, height/2 - 4);
+		dirty.add(width/2 + 4, height/2 + 4);
+
+		// fuse the scan into the global map and seed the cells without data from it
+		// (the seeded cells have to be cleared with the next scan too)
+		int ux0 = Math.min(cx0, dirty.x);
+		int uy0 = Math.min(cy0, dirty.y);
+		int ux1 = Math.max(cx1, dirty.x + dirty.width);
+		int uy1 = Math.max(cy1, dirty.y + dirty.height);
+		if (global != null) {
+			global.fuse(this);
+			Rectangle seeded = global.seed(this);
+			if (seeded != null) {
+				if (!scrolling)
+					dirty.setBounds(0, 0, width, height);
+				ux0 = Math.min(ux0, seeded.x);
+				uy0 = Math.min(uy0, seeded.y);
+				ux1 = Math.max(ux1, seeded.x + seeded.width);
+				uy1 = Math.max(uy1, seeded.y + seeded.height);
+			}
+		}
+
+		// update the cell costs for the cleared, the new and the seeded region (just once)
+		updateCost(ux0, uy0, ux1, uy1);
+	}
+
+	/**
+	 * Sets the obstacle and hazard samples of a range point and marks its cell.
+	 *
+	 * @param frame the range points
+	 * @param i the range point index
+	 * @param idx the cell index of the range point
+	 */
+	private void setSample(ScanFrame frame, int i, int idx) {
+
+		obsPlane[idx] = frame.obs[i];
+		hazPlane[idx] = frame.haz[i];
+		missPlane[idx] = 0;
+	}
+
+	/**
+	 * Fills the terrain grid data of a range point cell from the filtered planes.
+	 *
+	 * @param frame the range points
+	 * @param i the range point index
+	 * @param idx the cell index of the range point
+	 */
+	private void fillCell(ScanFrame frame, int i, int idx) {
+
+		int tidx = offX == 0 && offY == 0 ? idx : index(idx % width, idx / width);
+		terrain.set(SLP, tidx, frame.slp[i] & 0xff); // slope value
+		terrain.set(GRD, tidx, frame.grd[i] & 0xff); // ground value
+		terrain.set(OBS, tidx, obsFilt[idx] & 0xff); // filtered obstacle value
+		terrain.set(HAZ, tidx, hazFilt[idx] & 0xff); // filtered hazard value
+		// after filtering points without missing neighbours are valid,
+		// they will be marked with 2, 1 means available as range point but filtered out
+		terrain.set(VAL, tidx, missPlane[idx] == 0 ? 2 : 1);
+		rangePtIdx[idx] = i; // remember the range point index
+	}
+
+	/**
+	 * The parallel version of the sample, filter and fill steps of setData.
+	 * The range points are binned into the row bands (stable, so a cell hit by several points
+	 * gets the values of the last one as in the serial version) and each band filters its rows.
+	 * The separable dilations are split into the horizontal and the vertical pass, with
+	 * all bands done between the steps, so the halo rows of the neighbour bands are complete.
+	 *
+	 * @param frame the new data
+	 */
+	private void setDataParallel(ScanFrame frame) {
+
+		scanFrame = frame;
+		if (binned.length < frame.size)
+			binned = new int[frame.size];
+
+		// bin the points: count per chunk and band, then each chunk writes to its own slots
+		runBands(Band.COUNT);
+		int pos = 0;
+		for (int b = 0; b < bands.length; b++) {
+			bandStart[b] = pos;
+			for (Band chunk : bands) {
+				chunk.next[b] = pos;
+				pos += chunk.count[b];
+			}
+		}
+		bandStart[bands.length] = pos;
+		runBands(Band.SCATTER);
+
+		runBands(Band.SAMPLE);
+		runBands(Band.DILATE);
+		runBands(Band.FILL);
+
+		scanFrame = null;
+	}
+
+	/**
+	 * Runs a processing step for all row bands and waits for them.
+	 *
+	 * @param step the step
+	 */
+	private void runBands(int step) {
+
+		for (Band b : bands) {
+			b.reinitialize();
+			b.step = step;
+		}
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(bands);
+			}
+		});
+	}
+
+	/**
+	 * Sets the number of threads for setData. With more than one thread the grid is
+	 * divided into one row band per thread which are filtered on a fork join pool.
+	 * Both modes give the same results.
+	 *
+	 * @param threads the number of threads, 1 for the serial mode
+	 */
+	public void setParallelism(int threads) {
+
+		if (pool != null)
+			pool.shutdown();
+		pool = null;
+		bands = null;
+		if (threads < 2)
+			return;
+
+		pool = new ForkJoinPool(threads);
+		bandRows = (height + threads - 1) / threads;
+		bandStart = new int[threads + 1];
+		if (obsRows == null) {
+			obsRows = new byte[width * height];
+			missRows = new byte[width * height];
+		}
+		bands = new Band[threads];
+		for (int b = 0; b < threads; b++)
+			bands[b] = new Band(b);
+	}
+
+	/**
+	 * A row band of the map for the parallel mode of setData.
+	 * For the binning each band also processes a chunk of the range points.
+	 */
+	private class Band extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/** The step to count the points of the chunk per band. */
+		static final int COUNT = 0;
+
+		/** The step to write the point indices of the chunk to the band slots. */
+		static final int SCATTER = 1;
+
+		/** The step to set the samples and to do the horizontal dilation passes. */
+		static final int SAMPLE = 2;
+
+		/** The step to do the vertical dilation passes and the hazard blur. */
+		static final int DILATE = 3;
+
+		/** The step to blur the obstacles and to fill the terrain grid. */
+		static final int FILL = 4;
+
+		/** The band index. */
+		private final int id;
+
+		/** The first row of the band. */
+		private final int y0;
+
+		/** The row after the band. */
+		private final int y1;
+
+		/** The filter buffers of the band. */
+		private final RasterFilter filter = new RasterFilter(width, height);
+
+		/** The number of points of the chunk per band. */
+		final int[] count = new int[bands.length];
+
+		/** The next slot per band for the points of the chunk. */
+		final int[] next = new int[bands.length];
+
+		/** The current step. */
+		int step;
+
+		/**
+		 * Instantiates a new row band.
+		 *
+		 * @param id the band index
+		 */
+		Band(int id) {
+			this.id = id;
+			this.y0 = Math.min(height, id * bandRows);
+			this.y1 = Math.min(height, y0 + bandRows);
+		}
+
+		@Override
+		protected void compute() {
+
+			int n = scanFrame.size;
+			int[] cell = scanFrame.cell;
+			int bandCells = bandRows * width;
+			int i0 = (int) ((long) n * id / bands.length);
+			int i1 = (int) ((long) n * (id + 1) / bands.length);
+
+			switch (step) {
+			case COUNT:
+				Arrays.fill(count, 0);
+				for (int i = i0; i < i1; i++)
+					if (cell[i] >= 0)
+						count[cell[i] / bandCells]++;
+				break;
+			case SCATTER:
+				for (int i = i0; i < i1; i++)
+					if (cell[i] >= 0)
+						binned[next[cell[i] / bandCells]++] = i;
+				break;
+			case SAMPLE:
+				for (int k = bandStart[id]; k < bandStart[id + 1]; k++)
+					setSample(scanFrame, binned[k], cell[binned[k]]);
+				filter.dilateRows(obsPlane, obsRows, 1, halo.x,
+						Math.max(y0, halo.y - 1), halo.x + halo.width, Math.min(y1, halo.y + halo.height + 1));
+				filter.dilateRows(missPlane, missRows, 1, scan.x,
+						Math.max(y0, scan.y - 1), scan.x + scan.width, Math.min(y1, scan.y + scan.height + 1));
+				break;
+			case DILATE:
+				filter.dilateColumns(obsRows, obsPlane, 1, halo.x,
+						Math.max(y0, halo.y), halo.x + halo.width, Math.min(y1, halo.y + halo.height));
+				filter.dilateColumns(missRows, missPlane, 1, scan.x,
+						Math.max(y0, scan.y), scan.x + scan.width, Math.min(y1, scan.y + scan.height));
+				filter.blur(hazPlane, hazFilt, RasterFilter.BLUR_WEIGHT, scan.x,
+						Math.max(y0, scan.y), scan.x + scan.width, Math.min(y1, scan.y + scan.height));
+				break;
+			case FILL:
+				filter.blur(obsPlane, obsFilt, RasterFilter.BLUR_WEIGHT, scan.x,
+						Math.max(y0, scan.y), scan.x + scan.width, Math.min(y1, scan.y + scan.height));
+				for (int k = bandStart[id]; k < bandStart[id + 1]; k++)
+					fillCell(scanFrame, binned[k], cell[binned[k]]);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Gets the terrain layer index of a map cell (the ring buffer position in scrolling mode).
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @return the terrain layer index
+	 */
+	private int index(int x, int y) {
+
+		int px = x + offX;
+		if (px >= width)
+			px -= width;
+		int py = y + offY;
+		if (py >= height)
+			py -= height;
+		return py * width + px;
+	}
+
+	/**
+	 * Sets the terrain parameter of a part of a map row.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param y the row
+	 * @param x0 the first column
+	 * @param x1 the column after the last one
+	 * @param value the parameter value
+	 */
+	private void fillRow(int prop, int y, int x0, int x1, int value) {
+
+		int idx = index(x0, y);
+		int n = Math.min(x1 - x0, width - idx % width); // up to the ring buffer end
+		terrain.fill(prop, idx, n, value);
+		if (n < x1 - x0)
+			terrain.fill(prop, idx - idx % width, x1 - x0 - n, value);
+	}
+
+	/**
+	 * Updates the cell costs of a region from the terrain parameters.
+	 *
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 */
+	private void updateCost(int x0, int y0, int x1, int y1) {
+
+		version++;
+		if (x0 >= x1 || y0 >= y1)
+			return;
+
+		// the clearance changes within the clearance range around the region
+		float range = getClearanceRange();
+		int r = (int) Math.ceil(range);
+		x0 = Math.max(0, x0 - r);
+		y0 = Math.max(0, y0 - r);
+		x1 = Math.min(width, x1 + r);
+		y1 = Math.min(height, y1 + r);
+		updateClearance(x0, y0, x1, y1, range);
+
+		for (int y = y0; y < y1; y++) {
+			int idx = index(x0, y);
+			int n = Math.min(x1 - x0, width - idx % width); // up to the ring buffer end
+			costModel.compute(terrain, idx, costRow, 0, n);
+			if (n < x1 - x0)
+				costModel.compute(terrain, idx - idx % width, costRow, n, x1 - x0 - n);
+
+			// add the clearance cost and record the changed cells
+			int o = y * width + x0;
+			for (int i = 0; i < x1 - x0; i++) {
+				costRow[i] += costModel.getClearanceCost(clearance[o + i]);
+				if (cost[o + i] != costRow[i]) {
+					if (changes.size() >= changes.capacity() / 8)
+						restartChanges(); // too many changes for an incremental search
+					changes.add(o + i);
+					cost[o + i] = costRow[i];
+				}
+			}
+		}
+		if (pyramid != null)
+			pyramid.update(x0, y0, x1, y1);
+	}
+
+	/**
+	 * Updates the clearance of a region by the distance transform of the obstacle layer
+	 * (the cells above the maximum obstacle value of the cost model are the obstacles).
+	 *
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 * @param range the clearance range
+	 */
+	private void updateClearance(int x0, int y0, int x1, int y1, float range) {
+
+		// the obstacle values of the region and the range around it in map coordinates
+		int r = (int) Math.ceil(range);
+		int ox0 = Math.max(0, x0 - r);
+		int ox1 = Math.min(width, x1 + r);
+		for (int y = Math.max(0, y0 - r); y < Math.min(height, y1 + r); y++) {
+			int idx = index(ox0, y);
+			int n = Math.min(ox1 - ox0, width - idx % width); // up to the ring buffer end
+			terrain.get(OBS, idx, obsMap, y * width + ox0, n);
+			if (n < ox1 - ox0)
+				terrain.get(OBS, idx - idx % width, obsMap, y * width + ox0 + n, ox1 - ox0 - n);
+		}
+		transform.transform(obsMap, costModel.maxObstacle, clearance, x0, y0, x1, y1, range);
+	}
+
+	/**
+	 * Gets the range up to which the clearance is exact (at least one cell).
+	 *
+	 * @return the clearance range (in cells)
+	 */
+	private float getClearanceRange() {
+		return Math.max(1, costModel.getClearanceRange());
+	}
+
+	/**
+	 * Gets the version of the cost plane. The version changes with each change of the cell costs,
+	 * so results derived from the costs (e.g. cached path searches) are valid as long as it is the same.
+	 *
+	 * @return the version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the cells whose cost changed since a version, e.g. to repair the paths searched
+	 * for that version. The set can contain more cells (changed up to the given version).
+	 * The changes are only recorded back to a limited version: they are restarted if the map
+	 * moves (all cells change) or too many cells changed.
+	 *
+	 * @param since the version
+	 * @return the changed cells or null if the changes are not recorded back to that version
+	 */
+	public CellSet getChanges(int since) {
+		return since >= changesFrom && since <= version ? changes : null;
+	}
+
+	/**
+	 * Restarts the recording of the cost changes with the current version.
+	 */
+	private void restartChanges() {
+		changes.clear();
+		changesFrom = version;
+	}
+
+	/**
+	 * Sets the number of pyramid levels for coarse to fine path planning, e.g. 4 for
+	 * the map resolution and the 2x, 4x and 8x downsampled levels.
+	 *
+	 * @param levels the number of levels (including the map resolution), 0 or 1 to disable the pyramid
+	 */
+	public void setPyramidLevels(int levels) {
+		pyramid = levels > 1 ? new MapPyramid(cost, width, height, levels) : null;
+	}
+
+	/**
+	 * Gets the map pyramid.
+	 *
+	 * @return the map pyramid or null if not enabled
+	 */
+	public MapPyramid getPyramid() {
+		return pyramid;
+	}
+
+	/**
+	 * Sets the global terrain map. Each scan is fused into the global map and
+	 * the cells without data are seeded from it.
+	 *
+	 * @param global the global terrain map or null
+	 */
+	public void setGlobalMap(GlobalTerrainMap global) {
+		this.global = global;
+	}
+
+	/**
+	 * Enables or disables the scrolling mode. In scrolling mode the terrain layers are used
+	 * as a ring buffer (torus) which moves with the origin of the map, see setOrigin.
+	 * Cells keep their terrain values until they are overwritten by a new scan or leave the map.
+	 *
+	 * @param scrolling true, to enable the scrolling mode
+	 */
+	public void setScrolling(boolean scrolling) {
+
+		if (this.scrolling == scrolling)
+			return;
+
+		this.scrolling = scrolling;
+		hasOrigin = false;
+		if (!scrolling)
+			dirty.setBounds(0, 0, width, height); // old data could be everywhere
+	}
+
+	/**
+	 * Sets the origin of the map as global grid cell (the global grid column and row of the map
+	 * cell 0,0), the global grid is aligned to the map resolution.
+	 * In scrolling mode the terrain data are moved with the origin, only the rows and columns
+	 * entering the map are cleared, all other cells keep their values.
+	 *
+	 * @param gx the global grid column of the map cell 0,0
+	 * @param gy the global grid row of the map cell 0,0
+	 */
+	public void setOrigin(int gx, int gy) {
+
+		int dx = gx - originX;
+		int dy = gy - originY;
+		originX = gx;
+		originY = gy;
+
+		if (!scrolling || (hasOrigin && dx == 0 && dy == 0))
+			return;
+
+		if (!hasOrigin || Math.abs(dx) >= width || Math.abs(dy) >= height) {
+			// nothing to keep
+			hasOrigin = true;
+			offX = 0;
+			offY = 0;
+			terrain.clear();
+			Arrays.fill(cost, TerrainCostModel.BLOCKED);
+			Arrays.fill(clearance, getClearanceRange());
+			version++;
+			restartChanges();
+			if (pyramid != null)
+				pyramid.update(0, 0, width, height);
+			dirty.setBounds(0, 0, width, height);
+			return;
+		}
+
+		// move the ring buffer offset
+		offX = (offX + dx + width) % width;
+		offY = (offY + dy + height) % height;
+
+		// move the cost and the clearance plane (in map coordinates) by the same distance
+		version++;
+		restartChanges(); // all cells move
+		int n = width - Math.abs(dx);
+		if (dy >= 0) {
+			for (int y = 0; y < height - dy; y++) {
+				System.arraycopy(cost, (y + dy) * width + Math.max(dx, 0), cost, y * width + Math.max(-dx, 0), n);
+				System.arraycopy(clearance, (y + dy) * width + Math.max(dx, 0), clearance, y * width + Math.max(-dx, 0), n);
+			}
+		}
+		else {
+			for (int y = height - 1; y >= -dy; y--) {
+				System.arraycopy(cost, (y + dy) * width + Math.max(dx, 0), cost, y * width + Math.max(-dx, 0), n);
+				System.arraycopy(clearance, (y + dy) * width + Math.max(dx, 0), clearance, y * width + Math.max(-dx, 0), n);
+			}
+		}
+		if (pyramid != null)
+			pyramid.update(0, 0, width, height);
+
+		// clear the columns and rows entering the map
+		int cx0 = dx > 0 ? width - dx : 0;
+		int cx1 = dx > 0 ? width : -dx;
+		int cy0 = dy > 0 ? height - dy : 0;
+		int cy1 = dy > 0 ? height : -dy;
+		for (int y = 0; y < height; y++) {
+			boolean row = y >= cy0 && y < cy1;
+			for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+				if (row)
+					fillRow(prop, y, 0, width, 0);
+				else if (cx0 < cx1)
+					fillRow(prop, y, cx0, cx1, 0);
+		}
+		updateCost(cx0, 0, cx1, height);
+		updateCost(0, cy0, width, cy1);
+
+		// the clearance near the opposite borders changes with the obstacles leaving the map
+		if (dx != 0)
+			updateCost(dx > 0 ? 0 : width - 1, 0, dx > 0 ? 1 : width, height);
+		if (dy != 0)
+			updateCost(0, dy > 0 ? 0 : height - 1, width, dy > 0 ? 1 : height);
+	}
+
+	/**
+	 * Gets the global grid column of the map cell 0,0.
+	 *
+	 * @return the origin column
+	 */
+	public int getOriginX() {
+		return originX;
+	}
+
+	/**
+	 * Gets the global grid row of the map cell 0,0.
+	 *
+	 * @return the origin row
+	 */
+	public int getOriginY() {
+		return originY;
+	}
+
+	/**
+	 * Sets the cost model and updates the cell costs for the whole map.
+	 *
+	 * @param costModel the cost model (compiled)
+	 */
+	public void setCostModel(TerrainCostModel costModel) {
+		this.costModel = costModel;
+		updateCost(0, 0, width, height);
+	}
+
+	/**
+	 * Gets the cost model.
+	 * After changing its parameters it has to be compiled and set again.
+	 *
+	 * @return the cost model
+	 */
+	public TerrainCostModel getCostModel() {
+		return costModel;
+	}
+
+	/**
+	 * Gets the compiled movement cost of all cells (indexed y*width+x) for direct access
+	 * by the path finder. Blocked cells have the cost TerrainCostModel.BLOCKED.
+	 *
+	 * @return the cost plane
+	 */
+	public float[] getCostPlane() {
+		return cost;
+	}
+
+	/**
+	 * Checks if all traversable cells of a region have the same cost (blocked cells
+	 * are ignored), e.g. to select the jump point search for a path within the region.
+	 *
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 * @return true, if the cost is uniform
+	 */
+	public boolean isUniformCost(int x0, int y0, int x1, int y1) {
+
+		float c = TerrainCostModel.BLOCKED;
+		for (int y = Math.max(y0, 0); y < Math.min(y1, height); y++) {
+			for (int i = y * width + Math.max(x0, 0), end = y * width + Math.min(x1, width); i < end; i++) {
+				if (cost[i] == TerrainCostModel.BLOCKED || cost[i] == c)
+					continue;
+				if (c != TerrainCostModel.BLOCKED)
+					return false;
+				c = cost[i];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the clearance of a cell, the distance to the nearest obstacle.
+	 * It is exact up to the clearance range of the cost model (at least one cell),
+	 * larger distances are saturated to that range.
+	 *
+	 * @param x the x coordinate of the cell
+	 * @param y the y coordinate of the cell
+	 * @return the clearance (in cells)
+	 */
+	public float getClearance(int x, int y) {
+		return clearance[y * width + x];
+	}
+
+	/**
+	 * Gets the clearance of all cells (indexed y*width+x) for direct access.
+	 *
+	 * @return the clearance plane
+	 */
+	public float[] getClearancePlane() {
+		return clearance;
+	}
+
+	/**
+	 * Sets the incremental mode. If enabled, only the cells within the region of the
+	 * previous and the current scan are cleared and filtered, otherwise the whole grid.
+	 * Both modes give the same results.
+	 *
+	 * @param incremental true, to enable the incremental mode
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Gets the grid region covered by the range points of the last scan.
+	 *
+	 * @return the scan region
+	 */
+	public Rectangle getScanRegion() {
+		return scan;
 	}
 
 	/**
 	 * A helper A helper method to save the range map to a file.
 	 *
-	 * @param rangePoints the range points
+	 * @param frame the range points
 	 */
 	@SuppressWarnings("unused")
-	private void saveRangeMap(List<Position> rangePoints) {
+	private void saveRangeMap(ScanFrame frame) {
 
 		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		for (Position p : rangePoints) {
-			try {
-				img.getRaster().setPixel(p.mapX, p.mapY,
-						new int[]{p.slp, p.grd == 0 ? 1 : p.grd, p.obs, p.haz});
-			} catch (Exception e) {}
+		for (int i = 0; i < frame.size; i++) {
+			if (frame.cell[i] < 0)
+				continue;
+			int grd = frame.grd[i] & 0xff;
+			img.getRaster().setPixel(frame.getMapX(i), frame.getMapY(i),
+					new int[]{frame.slp[i] & 0xff, grd == 0 ? 1 : grd, frame.obs[i] & 0xff, frame.haz[i] & 0xff});
 		}
 
 		NavigationTask navigation = NavigationTask.getTask();
@@ -182,44 +958,50 @@ public class Map implements PathFinderMap {
 	}
 
 	/**
-	 * Clear images by setting pixel values to 0.
+	 * Clear the filter planes within a region (no samples, all cells without range point).
+	 *
+	 * @param r the region to clear
 	 */
-	private void clearImages() {
+	private void clearPlanes(Rectangle r) {
 
-		for (int y = 0; y < height; y++)
-			for (int x = 0; x < width; x++)
-				for (int b = 0; b < 3; b++) {
-					filtImg1.getRaster().setSample(x, y, b, 0);
-					filtImg2.getRaster().setSample(x, y, b, 0);
-				}
+		for (int y = r.y; y < r.y + r.height; y++) {
+			int idx = y * width + r.x;
+			Arrays.fill(obsPlane, idx, idx + r.width, (byte) 0);
+			Arrays.fill(hazPlane, idx, idx + r.width, (byte) 0);
+			Arrays.fill(missPlane, idx, idx + r.width, (byte) 1);
+		}
+	}
+
+	/**
+	 * Clear terrain within a region by setting parameter values to 0.
+	 *
+	 * @param r the region to clear
+	 */
+	private void clearTerrain(Rectangle r) {
 
+		for (int y = r.y; y < r.y + r.height; y++)
+			for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+				fillRow(prop, y, r.x, r.x + r.width, 0);
 	}
 
 	/**
-	 * Clear terrain by setting parameter values to 0.
+	 * Clear the range point index within a region.
+	 *
+	 * @param r the region to clear
 	 */
-	private void clearTerrain() {
+	private void clearRangePtIdx(Rectangle r) {
 
-		for (int y = 0; y < height; y++)
-			for (int x = 0; x < width; x++) {
-				terrain[x][y][0] = 0;
-				terrain[x][y][1] = 0;
-				terrain[x][y][2] = 0;
-				terrain[x][y][3] = 0;
-				terrain[x][y][4] = 0;
-				rangePtIdx[x][y] = -1;
-			}
+		for (int y = r.y; y < r.y + r.height; y++) {
+			int idx = y * width + r.x;
+			Arrays.fill(rangePtIdx, idx, idx + r.width, -1);
+		}
 	}
 
 	/**
 	 * Clear the array marking which tiles have been visited by the path finder.
 	 */
 	public void clearVisited() {
-		if (visited != null) {
-			for (int x = 0; x < getWidth(); x++)
-				for (int y = 0; y < getHeight(); y++)
-					visited[x][y] = false;
-		}
+		visited.clear();
 	}
 
 	/**
@@ -232,9 +1014,53 @@ public class Map implements PathFinderMap {
 	 * @see PathFinderMap#visited(int, int)
 	 */
 	public boolean visited(int x, int y) {
-		if (visited == null)
-			return false;
-		return visited[x][y];
+		return visited.contains(y * width + x);
+	}
+
+	/**
+	 * Gets the set of cells visited by the path finder (cell index y*width+x),
+	 * e.g. to iterate over all reachable cells.
+	 *
+	 * @return the visited cells
+	 */
+	public CellSet getVisited() {
+		return visited;
+	}
+
+	/**
+	 * Marks the cells reachable from the given cell as visited (like a full search of the
+	 * path finder does) by a flood fill over the cells which are not blocked. The visited
+	 * cells are used as the queue of the fill, so no paths and costs are computed.
+	 *
+	 * @param x the x coordinate of the source cell
+	 * @param y the y coordinate of the source cell
+	 * @param diagonal true, if diagonal movement is allowed
+	 */
+	public void markReachable(int x, int y, boolean diagonal) {
+
+		visited.clear();
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+		visited.add(y * width + x);
+		if (blocked(x, y))
+			return;
+
+		for (int i = 0; i < visited.size(); i++) {
+			int cell = visited.get(i);
+			int cx = cell % width;
+			int cy = cell / width;
+			for (int dy = -1; dy < 2; dy++) {
+				for (int dx = -1; dx < 2; dx++) {
+					if ((dx == 0 && dy == 0) || (!diagonal && dx != 0 && dy != 0))
+						continue;
+					int nx = cx + dx;
+					int ny = cy + dy;
+					if (nx < 0 || ny < 0 || nx >= width || ny >= height || blocked(nx, ny))
+						continue;
+					visited.add(ny * width + nx);
+				}
+			}
+		}
 	}
 
 	/**
@@ -246,7 +1072,58 @@ public class Map implements PathFinderMap {
 	 * @return The parameter value at the given location
 	 */
 	public int getTerrain(int x, int y, int prop) {
-		return terrain[x][y][prop] & 0xff;
+		return terrain.get(prop, index(x, y));
+	}
+
+	/**
+	 * Copies a row of a terrain parameter to the given array.
+	 *
+	 * @param prop the property/parameter of the terrain cells
+	 * @param y the y coordinate of the row
+	 * @param dst the destination array (at least the map width long)
+	 */
+	public void getTerrainRow(int prop, int y, byte[] dst) {
+		int idx = index(0, y);
+		int n = width - offX; // up to the ring buffer end
+		terrain.get(prop, idx, dst, 0, n);
+		terrain.get(prop, idx - offX, dst, n, offX);
+	}
+
+	/**
+	 * Sets a row of a terrain parameter from the given array.
+	 *
+	 * @param prop the property/parameter of the terrain cells
+	 * @param y the y coordinate of the row
+	 * @param src the source array (at least the map width long)
+	 */
+	public void setTerrainRow(int prop, int y, byte[] src) {
+		loadTerrainRow(prop, y, src);
+		updateCost(0, y, width, y + 1);
+	}
+
+	/**
+	 * Sets a row of a terrain parameter without updating the cell costs, for bulk changes
+	 * within setData (the costs of the changed region are updated once at its end).
+	 *
+	 * @param prop the property/parameter of the terrain cells
+	 * @param y the y coordinate of the row
+	 * @param src the source array (at least the map width long)
+	 */
+	void loadTerrainRow(int prop, int y, byte[] src) {
+		int idx = index(0, y);
+		int n = width - offX; // up to the ring buffer end
+		terrain.set(prop, idx, src, 0, n);
+		terrain.set(prop, idx - offX, src, n, offX);
+	}
+
+	/**
+	 * Gets the terrain layers for bulk access to the parameter planes.
+	 * Note: in scrolling mode the map cell 0,0 is not the first cell of the planes.
+	 *
+	 * @return the terrain layers
+	 */
+	public TerrainLayers getLayers() {
+		return terrain;
 	}
 
 	/**
@@ -257,7 +1134,7 @@ public class Map implements PathFinderMap {
 	 * @return the index of the range point array this cell data is based on
 	 */
 	public int getRangePtIdx(int x, int y) {
-		return rangePtIdx[x][y];
+		return rangePtIdx[y * width + x];
 	}
 
 	/**
@@ -305,10 +1182,8 @@ public class Map implements PathFinderMap {
 	 */
 	public boolean blocked(int x, int y) {
 
-		return getTerrain(x, y, OBS) > 0 ||  // is there an obstacle
-			   getTerrain(x, y, VAL) < 2 ||  // is the cell entry valid
-			   getTerrain(x, y, GRD) > 30 || // is ground value smaller than a given max
-			   getTerrain(x, y, SLP) > 15;   // is the slope smaller than a given max
+		// obstacle, valid, ground and slope are checked by the compiled cost model
+		return cost[y * width + x] == TerrainCostModel.BLOCKED;
 	}
 
 	/**
@@ -323,20 +1198,7 @@ public class Map implements PathFinderMap {
 	 */
 	public float getCost(int sx, int sy, int tx, int ty) {
 
-		float cost = 0;
-
-		float slope = getTerrain(tx, ty, SLP); // cost value for slope
-		if (slope > 5)
-			cost += slope / 5;
-
-		float ground = getTerrain(tx, ty, GRD); // cost value for the ground value
-		if (ground > 5)
-			cost += ground / 10;
-
-		float hazard = getTerrain(tx, ty, HAZ); // cost value for the hazard
-		cost += hazard / 128;
-
-		return cost; // the overall cell movement cost
+		return cost[ty * width + tx]; // the compiled slope, ground and hazard cost
 	}
 
 	/**
@@ -367,9 +1229,6 @@ public class Map implements PathFinderMap {
 	 * @see PathFinderMap#pathFinderVisited(int, int)
 	 */
 	public void pathFinderVisited(int x, int y) {
-		if (visited == null)
-			visited = new boolean[width][height];
-
-		visited[x][y] = true;
+		visited.add(y * width + x);
 	}
 }
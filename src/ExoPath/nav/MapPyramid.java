@@ -0,0 +1,144 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+/**
+ * The downsampled cost planes of a map for coarse to fine path planning.
+ * Level 0 is the cost plane of the map itself, each further level halves the resolution
+ * (a level l cell covers 2^l x 2^l map cells). A coarse cell is blocked if any of its cells
+ * is blocked, otherwise its cost is the minimum cost of its cells (a lower bound).
+ * The levels are updated incrementally for the changed regions of the map.
+ */
+public class MapPyramid {
+
+	/** The number of levels (including level 0). */
+	private final int levels;
+
+	/** The level widths. */
+	private final int[] widths;
+
+	/** The level heights. */
+	private final int[] heights;
+
+	/** The cost planes of the levels (level 0 is the map cost plane). */
+	private final float[][] cost;
+
+	/**
+	 * Instantiates a new map pyramid.
+	 *
+	 * @param base the cost plane of the map (level 0)
+	 * @param width the map width
+	 * @param height the map height
+	 * @param levels the number of levels (including level 0)
+	 */
+	public MapPyramid(float[] base, int width, int height, int levels) {
+
+		this.levels = levels;
+		widths = new int[levels];
+		heights = new int[levels];
+		cost = new float[levels][];
+
+		widths[0] = width;
+		heights[0] = height;
+		cost[0] = base;
+		for (int l = 1; l < levels; l++) {
+			widths[l] = (widths[l-1] + 1) / 2;
+			heights[l] = (heights[l-1] + 1) / 2;
+			cost[l] = new float[widths[l] * heights[l]];
+		}
+
+		update(0, 0, width, height);
+	}
+
+	/**
+	 * Updates the coarse levels for a changed region of the map.
+	 *
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 */
+	public void update(int x0, int y0, int x1, int y1) {
+
+		for (int l = 1; l < levels && x0 < x1 && y0 < y1; l++) {
+
+			// the covered region of this level
+			x0 >>= 1;
+			y0 >>= 1;
+			x1 = (x1 + 1) >> 1;
+			y1 = (y1 + 1) >> 1;
+
+			float[] src = cost[l-1];
+			float[] dst = cost[l];
+			int sw = widths[l-1];
+			int sh = heights[l-1];
+			int w = widths[l];
+			for (int y = y0; y < y1; y++) {
+				int sy = 2 * y;
+				int sy1 = Math.min(sy + 1, sh - 1);
+				for (int x = x0; x < x1; x++) {
+					int sx = 2 * x;
+					int sx1 = Math.min(sx + 1, sw - 1);
+					float c00 = src[sy * sw + sx];
+					float c10 = src[sy * sw + sx1];
+					float c01 = src[sy1 * sw + sx];
+					float c11 = src[sy1 * sw + sx1];
+					// any blocked cell blocks the coarse cell (the blocked cost is the maximum)
+					float max = Math.max(Math.max(c00, c10), Math.max(c01, c11));
+					dst[y * w + x] = max == TerrainCostModel.BLOCKED ? max :
+						Math.min(Math.min(c00, c10), Math.min(c01, c11));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of levels (including level 0).
+	 *
+	 * @return the number of levels
+	 */
+	public int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Gets the width of a level.
+	 *
+	 * @param level the level
+	 * @return the level width
+	 */
+	public int getWidth(int level) {
+		return widths[level];
+	}
+
+	/**
+	 * Gets the height of a level.
+	 *
+	 * @param level the level
+	 * @return the level height
+	 */
+	public int getHeight(int level) {
+		return heights[level];
+	}
+
+	/**
+	 * Gets the cost plane of a level (indexed y*width+x).
+	 * Blocked cells have the cost TerrainCostModel.BLOCKED.
+	 *
+	 * @param level the level
+	 * @return the cost plane
+	 */
+	public float[] getCostPlane(int level) {
+		return cost[level];
+	}
+}
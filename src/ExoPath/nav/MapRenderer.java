@@ -0,0 +1,168 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Renders the terrain layers of the map directly into the pixels of an int image
+ * (TYPE_INT_RGB or TYPE_INT_BGR, one pixel per map cell). The colours of the parameter
+ * values are precomputed ramps with 256 entries (alpha in the top byte) and are blended
+ * over the background row by row with the blend kernel (vectorised if possible),
+ * so rendering a map does not create any objects.
+ */
+public class MapRenderer {
+
+	/** The pixels of the image. */
+	private final int[] pixels;
+
+	/** The flag if the pixels are in blue, green, red order. */
+	private final boolean bgr;
+
+	/** The image width (the map width). */
+	private final int width;
+
+	/** The background colour. */
+	private final int background;
+
+	/** The colour of the cells available as range point but filtered out. */
+	private final int filtered;
+
+	/** The colour of the cells without data. */
+	private final int missing;
+
+	/** The colour of the rover position. */
+	private final int position;
+
+	/** The colour ramp of the slope values. */
+	private final int[] slope = new int[256];
+
+	/** The colour ramp of the ground values. */
+	private final int[] ground = new int[256];
+
+	/** The colour ramp of the hazard values. */
+	private final int[] hazard = new int[256];
+
+	/** The colour ramp of the obstacle values. */
+	private final int[] obstacle = new int[256];
+
+	/** The terrain rows. */
+	private final byte[][] rows = new byte[TerrainLayers.LAYERS][];
+
+	/** The slope colours of a row. */
+	private final int[] slopeRow;
+
+	/** The ground colours of a row. */
+	private final int[] groundRow;
+
+	/** The top layer colours of a row. */
+	private final int[] topRow;
+
+	/** The blend loop (vectorised if possible). */
+	private final RasterKernels kernels;
+
+	/**
+	 * Instantiates a new map renderer.
+	 *
+	 * @param image the image to render to (TYPE_INT_RGB or TYPE_INT_BGR)
+	 */
+	public MapRenderer(BufferedImage image) {
+		this(image, RasterKernels.INSTANCE);
+	}
+
+	/**
+	 * Instantiates a new map renderer with the given kernels (to compare the implementations).
+	 *
+	 * @param image the image to render to (TYPE_INT_RGB or TYPE_INT_BGR)
+	 * @param kernels the kernels
+	 */
+	MapRenderer(BufferedImage image, RasterKernels kernels) {
+
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		bgr = image.getType() == BufferedImage.TYPE_INT_BGR;
+		width = image.getWidth();
+		for (int i = 0; i < rows.length; i++)
+			rows[i] = new byte[width];
+		slopeRow = new int[width];
+		groundRow = new int[width];
+		topRow = new int[width];
+		this.kernels = kernels;
+
+		background = color(30, 150, 30, 255);
+		filtered = color(128, 128, 128, 255);
+		missing = color(64, 64, 64, 255);
+		position = color(0, 0, 0, 255);
+		for (int v = 0; v < 256; v++) {
+			int a = 20 + 5 * v;
+			slope[v] = v > 8 ? color(255, 250, 0, a > 255 ? 255 : a) : 0;
+			ground[v] = color(50, 90, 0, v < 70 ? 2 * v : 255);
+			hazard[v] = color(240, 150, 0, v);
+			obstacle[v] = color(220, 20, 20, v);
+		}
+	}
+
+	/**
+	 * Gets a colour in the pixel order of the image.
+	 *
+	 * @param r the red component
+	 * @param g the green component
+	 * @param b the blue component
+	 * @param a the alpha component
+	 * @return the colour (alpha in the top byte)
+	 */
+	private int color(int r, int g, int b, int a) {
+		return a << 24 | (bgr ? b << 16 | g << 8 | r : r << 16 | g << 8 | b);
+	}
+
+	/**
+	 * Renders the map: the cells with valid data are coloured by the slope, ground,
+	 * hazard and obstacle values over the background, the others as filtered or missing.
+	 *
+	 * @param map the map
+	 */
+	public void render(Map map) {
+
+		int posX = map.getPosX();
+		int posY = map.getPosY();
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int prop = 0; prop < TerrainLayers.LAYERS; prop++)
+				map.getTerrainRow(prop, y, rows[prop]);
+
+			// the colours of the layers, the top layer is an obstacle, a hazard or the ground again
+			for (int x = 0; x < width; x++) {
+				int obs = rows[Map.OBS][x] & 0xff;
+				int haz = rows[Map.HAZ][x] & 0xff;
+				slopeRow[x] = slope[rows[Map.SLP][x] & 0xff];
+				groundRow[x] = ground[rows[Map.GRD][x] & 0xff];
+				topRow[x] = obs > 0 ? obstacle[obs] : haz > 0 ? hazard[haz] : groundRow[x];
+			}
+
+			int o = y * width;
+			Arrays.fill(pixels, o, o + width, background);
+			kernels.blend(pixels, o, slopeRow, 0, width);
+			kernels.blend(pixels, o, groundRow, 0, width);
+			kernels.blend(pixels, o, topRow, 0, width);
+
+			// the cells without valid data and the position replace the blended colour
+			for (int x = 0; x < width; x++) {
+				int val = rows[Map.VAL][x] & 0xff;
+				if (val <= 1)
+					pixels[o + x] = val == 1 ? filtered : missing;
+				else if (x == posX && y == posY)
+					pixels[o + x] = position;
+			}
+		}
+	}
+}
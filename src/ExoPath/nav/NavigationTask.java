@@ -15,9 +15,9 @@ package exopath.nav;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.WritableRaster;
@@ -33,7 +33,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
@@ -51,7 +50,6 @@ import org.newdawn.slick.util.pathfinding.Path;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
-import com.jhlabs.image.MaximumFilter;
 
 import exopath.client.ConfigDataInterface.MapDim;
 import exopath.client.PlayerTask;
@@ -82,55 +80,6 @@ public class NavigationTask {
 		public void updateData();
 	}
 
-	/**
-	 * A descriptoin for position related data.
-	 */
-	public class Position {
-
-		/** The x coordinate of the position. */
-		public double x;
-		/** The y coordinate of the position. */
-		public double y;
-
-		/** The ground condition indicator for the position. */
-		public int grd;
-		/** The obstacle indicator for the position. */
-		public int obs;
-		/** The slope value for the position (in degree). */
-		public int slp;
-		/** The hazard indicator for the position. */
-		public int haz;
-
-		/** The related map x coordinate for the position. */
-		public int mapX;
-		/** The related map x coordinate for the position. */
-		public int mapY;
-
-		/**
-		 * Set the data for the position object.
-		 *
-		 * @param pce the Player point cloud data which provide the different parameters
-		 */
-		public void setData(PlayerPointCloud3DElement pce) {
-			this.x = pce.getPoint().getPx();
-			this.y = pce.getPoint().getPy();
-			this.grd = pce.getColor().getRed();   // the ground condition value is coded to the red channel
-			this.obs = pce.getColor().getGreen(); // the obstacle flag is coded to the green channel
-			this.haz = pce.getColor().getBlue();  // the hazard indicator  is coded to the blue channel
-			this.slp = pce.getColor().getAlpha(); // the slope value is coded to the alpha channel
-		}
-
-		/**
-		 * Sets the data by copying a given position object.
-		 *
-		 * @param p position object for data copy
-		 */
-		public void setData(Position p) {
-			x = p.x; y = p.y; mapX = p.mapX; mapY = p.mapY;
-			grd = p.grd; obs = p.obs; haz = p.haz; slp = p.slp;
-		}
-	}
-
 	/**
 	 * The exploration tree nodes (containing the position,
 	 * mean area radius and the route to the next exploration point.
@@ -165,8 +114,8 @@ public class NavigationTask {
 	 */
 	private class Route {
 
-		/** The path as the result of the path planner. */
-		transient public Path path;
+		/** The path as the result of the path planner (for the Dijkstra paths just set for the chosen route). */
+		transient public CellPath path;
 
 		/** The goal or the route. */
 		transient public Point goal;
@@ -193,20 +142,6 @@ public class NavigationTask {
 		}
 	}
 
-	/**
-	 * A maximum filter used for the dilation operation.
-	 */
-	private class ContourFilter extends MaximumFilter {
-
-		@Override
-		protected int[] filterPixels( int width, int height, int[] inPixels, Rectangle transformedSpace ) {
-			int[] outPixels = super.filterPixels(width, height, inPixels, transformedSpace);
-			for (int i = 0; i < outPixels.length; i++)
-				outPixels[i] -= inPixels[i];
-			return outPixels;
-		}
-	}
-
 	/** The player client component. */
 	private final PlayerTask player = PlayerTask.getTask();
 
@@ -225,26 +160,102 @@ public class NavigationTask {
 	/** The navigation grid size (based on the max range and resolution). */
 	public int imgSize = (int) (2*range / res);
 
+	/** The flag for the scrolling map mode (terrain data are kept while the rover moves). */
+	public boolean scrollingMap = false;
+
+	/** The number of threads to build the map (row bands filtered in parallel), applied with the next scan. */
+	public int mapThreads = 1;
+
+	/** The number of threads the map is set up for. */
+	private int buildThreads = 1;
+
+	/**
+	 * The number of map pyramid levels to search the paths to the goals coarse to fine,
+	 * within a corridor around a coarse path (0 or 1 for the Dijkstra paths from the position),
+	 * applied with the next scan.
+	 */
+	public int pyramidLevels = 0;
+
+	/** The number of pyramid levels the map is set up for. */
+	private int buildLevels = 0;
+
+	/**
+	 * The flag to plan with the parallel delta stepping search instead of the Dijkstra search
+	 * (all paths from the position, for large grids), applied with the next scan.
+	 */
+	public boolean deltaStepping = false;
+
+	/** The number of threads of the delta stepping search, applied with the next scan. */
+	public int plannerThreads = Runtime.getRuntime().availableProcessors();
+
+	/** The number of threads the delta stepping planner is set up for (0 without planner). */
+	private int parallelThreads = 0;
+
+	/** The paths to the sampled goals searched coarse to fine (reused for each scan). */
+	private final CellPath[] goalPaths = new CellPath[15];
+
+	/** The flag to use the persistent global terrain map (for the whole mission area). */
+	public boolean globalMap = false;
+
+	/** The number of global map tiles held on the heap. */
+	public int globalMapCache = 64;
+
+	/** The persistent global terrain map (if enabled). */
+	private GlobalTerrainMap globalTerrain;
+
 	/** The map instance for the path planner. */
 	private final Map map = new Map(imgSize, imgSize);
 
-	/** The Dijkstra path planner instance. */
-	private final DijkstraPathFinder finder = new DijkstraPathFinder(map, 200, true);
+	/** The flag to use the bucket queue (instead of the heap) for the Dijkstra search, applied with the next scan. */
+	public boolean bucketQueue = false;
+
+	/** The flag if the Dijkstra planner uses the bucket queue. */
+	private boolean finderBuckets = false;
+
+	/** The Dijkstra path planner instance (the search depth is not limited, see explore). */
+	private DijkstraPathFinder finder = new DijkstraPathFinder(map, imgSize*imgSize, true, finderBuckets);
+
+	/** The delta stepping planner instance (if enabled). */
+	private DeltaSteppingPathFinder parallelFinder;
+
+	/** The point to point planner (A*) for single paths, e.g. back to a tree node. */
+	private final AStarPathFinder pointFinder = new AStarPathFinder(map, true);
+
+	/** The point to point planner with jump points for regions of uniform cost. */
+	private final JumpPointPathFinder jumpFinder = new JumpPointPathFinder(map);
+
+	/** The path back to the parent tree node. */
+	private final CellPath backPath = new CellPath();
+
+	/** The goal cells of the path search. */
+	private final CellSet goals = new CellSet(imgSize * imgSize);
 
 	/** An image for range map filtering. */
 	private final BufferedImage rangeMap = new BufferedImage(imgSize, imgSize, BufferedImage.TYPE_INT_BGR);
 
-	/** An image to hold the determined reachable area. */
-	private final BufferedImage reachImg = new BufferedImage(imgSize, imgSize, BufferedImage.TYPE_BYTE_BINARY);
+	/** The copy of the range map published to the listeners (the planner draws the next one meanwhile). */
+	private final BufferedImage publishedMap = new BufferedImage(imgSize, imgSize, BufferedImage.TYPE_INT_BGR);
 
-	/** An image to hold the determined unreachable area. */
-	private final BufferedImage unreachImg = new BufferedImage(imgSize, imgSize, BufferedImage.TYPE_BYTE_BINARY);
+	/** The renderer of the map terrain to the range map image. */
+	private final MapRenderer renderer = new MapRenderer(rangeMap);
 
-	/** The maximum size for the range point buffer. */
+	/** The determined reachable area. */
+	private final BitPlane reach = new BitPlane(imgSize, imgSize);
+
+	/** The determined unreachable area. */
+	private final BitPlane unreach = new BitPlane(imgSize, imgSize);
+
+	/** The frontier between the reachable and the unreachable area. */
+	private final BitPlane frontier = new BitPlane(imgSize, imgSize);
+
+	/** The initial size for the range point buffers (they grow for denser scans). */
 	private final int rangePtBufferSize = (int)(2*Math.PI*Math.pow(range/res, 2));
 
-	/** The range point data buffer. We use a fixed array to avoid instanciation and garbage collection overhead*/
-	private final List<Position> rangePtBuffer = new ArrayList<Position>(rangePtBufferSize);
+	/** The range point data buffers (columnar). We reuse fixed arrays to avoid instanciation and garbage collection overhead*/
+	private final ScanFramePool frames = new ScanFramePool(2, rangePtBufferSize);
+
+	/** The range point data of the last scan (used by the planning). */
+	private ScanFrame frame = frames.acquire(0);
 
 	/** The number of exploration rovers. */
 	public int multiNum   = 2;
@@ -273,6 +284,123 @@ public class NavigationTask {
 	/** The navigation task event listeners. */
 	private final List<NavigationListener> listeners = new ArrayList<NavigationListener>();
 
+	/** The last scan frame written to the map (guarded by the map lock). */
+	private ScanFrame built;
+
+	/** The pipeline stage to copy the point cloud of a scan to a scan frame. */
+	private final PipelineStage<PlayerPointCloud3DElement[]> ingest =
+		new PipelineStage<PlayerPointCloud3DElement[]>("Scan Ingest") {
+			@Override
+			protected void process(PlayerPointCloud3DElement[] pcData) {
+
+				PlayerPoint3d worldPos = pcData[0].getPoint();
+
+				// the map origin as cell of the global grid (the rover is at the map center)
+				int originX = (int) Math.floor(worldPos.getPx() / res) - imgSize/2;
+				int originY = (int) Math.floor(worldPos.getPy() / res) - imgSize/2;
+
+				// the new scan goes to a free frame, frames are released when processed or dropped
+				ScanFrame next = frames.acquire(pcData.length - 1);
+				next.setData(pcData, 1, res, originX, originY, imgSize, imgSize);
+				next.posX = worldPos.getPx();
+				next.posY = worldPos.getPy();
+				next.originX = originX;
+				next.originY = originY;
+				if (decimateScan)
+					decimation.offer(next);
+				else
+					build.offer(next);
+			}
+		};
+
+	/** The flag to reduce the range points of a scan to one per map cell before the map build. */
+	public boolean decimateScan = false;
+
+	/** The scan decimation (the aggregation of the parameters can be selected). */
+	public final ScanDecimator decimator = new ScanDecimator(imgSize * imgSize);
+
+	/** The pipeline stage to reduce the range points of a scan to one per map cell. */
+	private final PipelineStage<ScanFrame> decimation = new PipelineStage<ScanFrame>("Scan Decimation") {
+		@Override
+		protected void process(ScanFrame next) {
+			ScanFrame cells = frames.acquire(next.size);
+			decimator.decimate(next, cells);
+			frames.release(next);
+			build.offer(cells);
+		}
+
+		@Override
+		protected void dropped(ScanFrame next) {
+			frames.release(next);
+		}
+	};
+
+	/** The pipeline stage to build the map from a scan frame. */
+	private final PipelineStage<ScanFrame> build = new PipelineStage<ScanFrame>("Map Build") {
+		@Override
+		protected void process(ScanFrame next) {
+			synchronized (map) {
+				if (mapThreads != buildThreads) {
+					buildThreads = mapThreads;
+					map.setParallelism(buildThreads);
+				}
+				if (pyramidLevels != buildLevels) {
+					buildLevels = pyramidLevels;
+					map.setPyramidLevels(buildLevels);
+				}
+				map.setScrolling(scrollingMap);
+				map.setOrigin(next.originX, next.originY);
+				map.setData(next);
+				built = next;
+			}
+			plan.offer(next);
+		}
+
+		@Override
+		protected void dropped(ScanFrame next) {
+			frames.release(next);
+		}
+	};
+
+	/** The pipeline stage to plan the next exploration step on the map. */
+	private final PipelineStage<ScanFrame> plan = new PipelineStage<ScanFrame>("Path Planning") {
+		@Override
+		protected void process(ScanFrame next) {
+			synchronized (map) {
+				if (next != built) {
+					// the map was built from a newer scan meanwhile
+					countDropped();
+					frames.release(next);
+					return;
+				}
+
+				if (multiSCnt == multiSteps) {
+					multiSCnt = 0;
+					multiCnt = (multiCnt + 1) % multiNum;
+				}
+
+				ScanFrame last = frame;
+				frame = next;
+				frames.release(last);
+				explore(new Point2D.Double(next.posX, next.posY));
+			}
+		}
+
+		@Override
+		protected void dropped(ScanFrame next) {
+			frames.release(next);
+		}
+	};
+
+	/** The pipeline stage to publish the planning results and to send the rover to the next position. */
+	private final PipelineStage<Point2D.Double> publish = new PipelineStage<Point2D.Double>("Nav Publish") {
+		@Override
+		protected void process(Point2D.Double target) {
+			notifyListeners();
+			moveTo(target.x, target.y, 0, SIMCMD.FULL);
+		}
+	};
+
 	/**
 	 * Gets the navigation component.
 	 *
@@ -298,10 +426,6 @@ public class NavigationTask {
 			nextPts.add(new Point2D.Double(0, 0));
 		}
 
-		// allocate range point buffer
-		for (int i = 0; i < rangePtBufferSize;i++)
-			rangePtBuffer.add(new Position());
-
 //		restoreTrees();
 
 		player.addListener(new PlayerListener() {
@@ -322,30 +446,13 @@ public class NavigationTask {
 							nextPts.set(i, new Point2D.Double(x, y));
 						}
 					}
+					if (globalMap && globalTerrain == null)
+						openGlobalMap(player.getConfigInterface().getMapData());
 					player.moveTo(nextPts.get(0).x, nextPts.get(0).y, 0, SIMCMD.FULL);
 					break;
 				case PTS:
 					rangeTS = (int) player.getPointCloudInterface().getTimestamp();
-					PlayerPointCloud3DElement[] pcData =
-						player.getPointCloudInterface().getData().getPoints();
-
-					List<Position> rangePoints = rangePtBuffer.subList(0, pcData.length-1);
-					PlayerPoint3d worldPos = pcData[0].getPoint();
-					for (int i = 0; i < pcData.length-1; i++) {
-						Position pos = rangePoints.get(i);
-						pos.setData(pcData[i+1]);
-						pos.mapX = (int)((pos.x - worldPos.getPx() + range) / (2*range) * imgSize);
-						pos.mapY = (int)((pos.y - worldPos.getPy() + range) / (2*range) * imgSize);
-					}
-
-					map.setData(rangePoints);
-
-					if (multiSCnt == multiSteps) {
-						multiSCnt = 0;
-						multiCnt = (multiCnt + 1) % multiNum;
-					}
-
-					explore(new Point2D.Double(worldPos.getPx(), worldPos.getPy()));
+					ingest.offer(player.getPointCloudInterface().getData().getPoints());
 					break;
 				case P2D:
 					posTS = (int) player.getPositionInterface().getTimestamp();
@@ -360,6 +467,77 @@ public class NavigationTask {
 		});
 	}
 
+	/**
+	 * Starts the threads of the navigation pipeline stages (the pipeline is not started
+	 * by default). Without the pipeline all stages are done directly on the Player polling thread.
+	 */
+	public void startPipeline() {
+		for (PipelineStage<?> stage : getStages())
+			stage.start();
+	}
+
+	/**
+	 * Stops the threads of the navigation pipeline stages,
+	 * the following scans are processed directly on the Player polling thread again.
+	 */
+	public void stopPipeline() {
+		for (PipelineStage<?> stage : getStages())
+			stage.stop();
+	}
+
+	/**
+	 * Stops the navigation: the pipeline threads and the threads of the delta stepping planner,
+	 * the global terrain map is flushed and closed (it is opened again with the next mission).
+	 */
+	public void stop() {
+
+		stopPipeline();
+		synchronized (map) {
+			if (parallelFinder != null)
+				parallelFinder.shutdown();
+			parallelFinder = null;
+			parallelThreads = 0;
+
+			if (globalTerrain != null) {
+				map.setGlobalMap(null);
+				globalTerrain.close();
+				globalTerrain = null;
+			}
+		}
+	}
+
+	/**
+	 * Gets the navigation pipeline stages (ingest, decimation, map build, plan and publish),
+	 * e.g. to check their queue depth and the number of dropped scans.
+	 *
+	 * @return the pipeline stages
+	 */
+	public PipelineStage<?>[] getStages() {
+		return new PipelineStage<?>[] { ingest, decimation, build, plan, publish };
+	}
+
+	/**
+	 * Opens the global terrain map for the whole mission area.
+	 * The map is stored in the workspace and reused after a restart.
+	 *
+	 * @param mapDim the dimensions of the mission area
+	 */
+	private void openGlobalMap(MapDim mapDim) {
+
+		int minX = (int) Math.floor(Math.min(mapDim.xmin, mapDim.xmax) / res);
+		int minY = (int) Math.floor(Math.min(mapDim.ymin, mapDim.ymax) / res);
+		int maxX = (int) Math.ceil(Math.max(mapDim.xmin, mapDim.xmax) / res);
+		int maxY = (int) Math.ceil(Math.max(mapDim.ymin, mapDim.ymax) / res);
+
+		File mapFile = Platform.getLocation().append("maps").append("terrain.map").toFile();
+		try {
+			globalTerrain = new GlobalTerrainMap(mapFile, minX, minY, maxX - minX, maxY - minY, globalMapCache);
+			map.setGlobalMap(globalTerrain);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Register navigation task listeners.
 	 *
@@ -383,7 +561,21 @@ public class NavigationTask {
 	 * @return the range map image
 	 */
 	public ImageData getRangeMap() {
-		return convertToSWT(rangeMap);
+		synchronized (publishedMap) {
+			return convertToSWT(publishedMap);
+		}
+	}
+
+	/**
+	 * Copies the finished range map to the published image.
+	 */
+	private void publishRangeMap() {
+
+		int[] src = ((DataBufferInt) rangeMap.getRaster().getDataBuffer()).getData();
+		int[] dst = ((DataBufferInt) publishedMap.getRaster().getDataBuffer()).getData();
+		synchronized (publishedMap) {
+			System.arraycopy(src, 0, dst, 0, src.length);
+		}
 	}
 
 	/**
@@ -412,89 +604,43 @@ public class NavigationTask {
 	 */
 	private void explore(final Point2D.Double worldPos) {
 
-		finder.initPathFinder(map);
-
-		for (int y = 0; y < map.getHeight(); y++) {
-			for (int x = 0; x < map.getWidth(); x++) {
-				reachImg.getRaster().setSample(x, y, 0, 0);
-				unreachImg.getRaster().setSample(x, y, 0, 0);
-			}
-		}
-
+		// the reachable cells: the delta stepping planner searches the paths of all cells in parallel,
+		// in scrolling mode the terrain is kept, so the paths of all cells
+		// are kept too and just repaired with the changed cells (then also used for the goals),
+		// otherwise the paths are just searched to the sampled goals
+		// (coarse to fine with a map pyramid)
+		boolean coarse = map.getPyramid() != null;
+		setupPlanner();
+		boolean parallel = parallelFinder != null && !coarse;
+		if (parallel)
+			parallelFinder.initPathFinder(map);
+		else if (scrollingMap && !coarse)
+			finder.initPathFinder(map);
+		else
+			map.markReachable(map.getPosX(), map.getPosY(), true);
+
+		// colour the terrain directly into the image pixels
+		renderer.render(map);
 		Graphics2D gc = rangeMap.createGraphics();
-		gc.setBackground(new Color(30, 150, 30));
-		gc.clearRect(0, 0, imgSize, imgSize);
-
-		for (int y = 0; y < map.getHeight(); y++) {
-			for (int x = 0; x < map.getWidth(); x++) {
-
-				int val = map.getTerrain(x, y, Map.VAL);
-				gc.setColor(val == 1 ? Color.gray : Color.darkGray);
-
-				if (val > 1) {
-					int slp = map.getTerrain(x, y, Map.SLP);
-					if (slp > 8) {
-						int slpVal = 20 + 5 * slp;
-						gc.setColor(new Color(255, 250, 0, slpVal > 255 ? 255 : slpVal));
-						gc.fillRect(x, y, 1, 1);
-					}
-					int grd = map.getTerrain(x, y, Map.GRD);
-					if (grd < 70) {
-						gc.setColor(new Color(50, 90, 0, 2*grd));
-						gc.fillRect(x, y, 1, 1);
-					}
-					else {
-						gc.setColor(new Color(50, 90, 0));
-						gc.fillRect(x, y, 1, 1);
-					}
-					int haz = map.getTerrain(x, y, Map.HAZ);
-					if (haz > 0)
-						gc.setColor(new Color(240, 150, 0, haz));
-					int obs = map.getTerrain(x, y, Map.OBS);
-					if (obs > 0)
-						gc.setColor(new Color(220, 20, 20, obs));
-					if (map.isPosition(x, y))
-						gc.setColor(Color.black);
-				}
-				gc.fillRect(x, y, 1, 1);
-
-				if (map.visited(x, y))
-					reachImg.getRaster().setSample(x, y, 0, 1);
-			}
-		}
 
-		List<Point> plist = new LinkedList<Point>();
-		plist.add(new Point(0,0));
-
-		while (!plist.isEmpty()) {
-			Point pt = plist.remove(0);
-			unreachImg.getRaster().setSample(pt.x, pt.y, 0, 1);
-			for (int x = -1; x < 2; x++) {
-				for (int y = -1; y < 2; y++) {
-					if (x == 0 && y == 0)
-						continue;
-					int cx = pt.x + x;
-					int cy = pt.y + y;
-					if (cx < 0 || cy < 0 || cx >= imgSize || cy >= imgSize)
-						continue;
-					if (reachImg.getRaster().getSample(cx, cy, 0) == 1)
-						continue;
-					if (unreachImg.getRaster().getSample(cx, cy, 0) != 1) {
-						plist.add(new Point(cx, cy));
-						unreachImg.getRaster().setSample(cx, cy, 0, 1);
-					}
-				}
-			}
+		// mark the reachable cells
+		reach.clear();
+		CellSet visited = map.getVisited();
+		for (int i = 0; i < visited.size(); i++) {
+			int cell = visited.get(i);
+			reach.set(cell % imgSize, cell / imgSize);
 		}
 
-		BufferedImage unreachImgFilt = reachImg; // reuse buffer of reachImg
-        new ContourFilter().filter(unreachImg, unreachImgFilt);
+		// the unreachable area connected to the map corner and its contour (the frontier)
+		unreach.clear();
+		unreach.fill(0, 0, reach);
+		frontier.contour(unreach);
 
 		List<Point> reachable = new ArrayList<Point>();
 		gc.setColor(Color.white);
 		for (int y = 0; y < imgSize; y++)
 			for (int x = 0; x < imgSize; x++)
-				if (unreachImgFilt.getRaster().getSample(x, y, 0) == 1) {
+				if (frontier.get(x, y)) {
 					gc.fillRect(x, y, 1, 1);
 					reachable.add(new Point(x, y));
 				}
@@ -512,16 +658,43 @@ public class NavigationTask {
 			r = (int)(sum / reachable.size());
 			gc.drawOval(posX-r, posY-r, 2*r, 2*r);
 
-			List<Route> routes = new ArrayList<Route>();
+			// sample the goals and search the paths until all goals are settled
+			List<Point> sampled = new ArrayList<Point>();
 			Random rndm = new Random();
-			for (int i = 0; i < 15; i++) {
+			goals.clear();
+			for (int i = 0; i < goalPaths.length; i++) {
 				Point g = reachable.get(rndm.nextInt(reachable.size()));
+				sampled.add(g);
+				goals.add(g.y * imgSize + g.x);
+			}
+			// the search stops at the cost of the farthest goal and at the map diagonal
+			// (a path depth limit would cut off the goals behind long detours)
+			if (!coarse && !parallel)
+				finder.findPaths(posX, posY, goals, Float.MAX_VALUE, imgSize * (float) Math.sqrt(2));
+
+			List<Route> routes = new ArrayList<Route>();
+			for (int i = 0; i < sampled.size(); i++) {
+				Point g = sampled.get(i);
 				Route route = new Route();
 				route.goal = g;
-				route.path = finder.findPath(g.x, g.y);
-				route.cost = finder.getPathCost(g.x, g.y);
 				route.dist = (float) (Math.sqrt(Math.pow(g.x-posX, 2) + Math.pow(g.y-posY, 2)) * res);
-				route.length = (float) (finder.getPathDist(g.x, g.y) * res);
+				if (coarse) {
+					// a corridor search per goal instead of the paths from the position
+					if (goalPaths[i] == null)
+						goalPaths[i] = new CellPath();
+					route.path = goalPaths[i];
+					finder.findPathCoarseToFine(posX, posY, g.x, g.y, route.path);
+					route.cost = finder.getCoarseToFineCost();
+					route.length = (float) (route.path.getDist() * res);
+				}
+				else if (parallel) {
+					route.cost = parallelFinder.getPathCost(g.x, g.y);
+					route.length = (float) (parallelFinder.getPathDist(g.x, g.y) * res);
+				}
+				else {
+					route.cost = finder.getPathCost(g.x, g.y);
+					route.length = (float) (finder.getPathDist(g.x, g.y) * res);
+				}
 				routes.add(route);
 			}
 
@@ -536,18 +709,28 @@ public class NavigationTask {
 				//double nextX = (double) route.goal.x / imgSize * 2*range - range + worldPos.x;
 				//double nextY = (double) route.goal.y / imgSize * 2*range - range + worldPos.y;
 				int idx = map.getRangePtIdx(route.goal.x, route.goal.y);
-				if (idx < 0 || rangePtBuffer.size() <= idx)
+				if (idx < 0 || frame.size <= idx)
 					continue;
-				double nextX = rangePtBuffer.get(idx).x;
-				double nextY = rangePtBuffer.get(idx).y;
+				double nextX = frame.x[idx];
+				double nextY = frame.y[idx];
 				Point2D.Double pt = new Point2D.Double(nextX, nextY);
 
 				if (worldPos.distance(pt) > 10)
 					if (!isMultiExplored(pt)) {
 						nextPt.x = pt.x;
 						nextPt.y = pt.y;
-						drawPath(gc, route.path, Color.black);
 						nextRoute.copyFrom(route);
+						nextRoute.path = new CellPath();
+						if (route.path != null)
+							nextRoute.path.set(route.path);
+						else if (parallel) {
+							Path p = parallelFinder.findPath(posX, posY, route.goal.x, route.goal.y);
+							if (p != null)
+								nextRoute.path.set(p, imgSize);
+						}
+						else
+							finder.findPath(posX, posY, route.goal.x, route.goal.y, nextRoute.path);
+						drawPath(gc, nextRoute.path, Color.black);
 						break;
 					}
 			}
@@ -560,24 +743,102 @@ public class NavigationTask {
 			setNavTree(newNavTree);
 		}
 
-		notifyListeners();
 		//saveNavMap();
 		//saveTree();
 
 		//moveRover(nextPt, nextRoute, worldPos);
 
+		Point2D.Double target;
 		if (!Double.isNaN(nextPt.x)) {
-			moveTo(nextPt, 0, SIMCMD.FULL);
+			target = nextTarget(nextPt);
 		}
 		else {
 			setNavTree(getNavTree().getParent());
-			moveTo(getNavTree().getNode().pos, 0, SIMCMD.FULL);
+			target = nextTarget(getNavTree().getNode().pos);
 		}
 
 		if (!Double.isNaN(nextPt.x))
 			pathLength[multiCnt] += nextRoute.length;
+		else if (findPath(getNavTree().getNode().pos.x, getNavTree().getNode().pos.y, backPath)) {
+			// backtracking: a single path to the tree node on the map
+			Graphics2D g = rangeMap.createGraphics();
+			drawPath(g, backPath, Color.blue);
+			g.dispose();
+			pathLength[multiCnt] += backPath.getDist() * res;
+		}
 		else if (getNavTree().getParent() != null)
 			pathLength[multiCnt] += getNavTree().getParent().getNode().route.length;
+
+		// notify the listeners and move the rover
+		publishRangeMap();
+		publish.offer(target);
+	}
+
+	/**
+	 * Sets the planners up for the current options (the map must be locked): the queue of
+	 * the Dijkstra planner (a new planner starts with an empty cache) and the delta stepping
+	 * planner, a planner with a different number of threads is shut down.
+	 */
+	private void setupPlanner() {
+
+		if (bucketQueue != finderBuckets) {
+			finderBuckets = bucketQueue;
+			finder = new DijkstraPathFinder(map, imgSize*imgSize, true, finderBuckets);
+		}
+
+		int threads = deltaStepping ? Math.max(1, plannerThreads) : 0;
+		if (threads == parallelThreads)
+			return;
+		if (parallelFinder != null)
+			parallelFinder.shutdown();
+		parallelFinder = threads > 0 ? new DeltaSteppingPathFinder(map, true, threads) : null;
+		parallelThreads = threads;
+	}
+
+	/**
+	 * Checks if a world position is on the current map.
+	 *
+	 * @param x the world x coordinate
+	 * @param y the world y coordinate
+	 * @return true, if the position is within the map
+	 */
+	public boolean isOnMap(double x, double y) {
+
+		synchronized (map) {
+			int cx = (int) Math.floor(x / res) - map.getOriginX();
+			int cy = (int) Math.floor(y / res) - map.getOriginY();
+			return cx >= 0 && cy >= 0 && cx < imgSize && cy < imgSize;
+		}
+	}
+
+	/**
+	 * Searches the path from the rover position to a single goal on the current map with A*,
+	 * or with the jump point search if the cells between the rover and the goal have a uniform cost.
+	 *
+	 * @param x the world x coordinate of the goal
+	 * @param y the world y coordinate of the goal
+	 * @param path the path to fill (map cells)
+	 * @return true, if the goal is on the map and reachable
+	 */
+	public boolean findPath(double x, double y, CellPath path) {
+
+		synchronized (map) {
+			path.clear();
+			int sx = map.getPosX();
+			int sy = map.getPosY();
+			int tx = (int) Math.floor(x / res) - map.getOriginX();
+			int ty = (int) Math.floor(y / res) - map.getOriginY();
+			if (tx < 0 || ty < 0 || tx >= imgSize || ty >= imgSize)
+				return false;
+
+			boolean uniform = map.isUniformCost(Math.min(sx, tx), Math.min(sy, ty),
+					Math.max(sx, tx) + 1, Math.max(sy, ty) + 1);
+			Path p = (uniform ? jumpFinder : pointFinder).findPath(sx, sy, tx, ty);
+			if (p == null)
+				return false;
+			path.set(p, imgSize);
+			return true;
+		}
 	}
 
 	/**
@@ -594,24 +855,23 @@ public class NavigationTask {
 			public void run() {
 
 				double ra = 0;
-				Path path = nextRoute.path; // TODO check valid
-				double[] px = new double[path.getLength()];
-				double[] py = new double[path.getLength()];
-				for (int i = 0; i < path.getLength(); i++) {
-					int idx = map.getRangePtIdx(path.getX(i), path.getY(i));
-					px[i] = rangePtBuffer.get(idx).x;
-					py[i] = rangePtBuffer.get(idx).y;
-				}
+				ScanFrame scan = frame;
+				CellPath path = nextRoute.path; // TODO check valid
 
+				// the range point positions of the path cells (read on demand)
 				int psteps = 6;
-				for (int i = 0; i < px.length-1; i++) {
-					double dx = (px[i+1] - px[i]) / psteps;
-					double dy = (py[i+1] - py[i]) / psteps;
-					ra = Math.atan2(py[i+1] - py[i], px[i+1] - px[i]);
+				for (int i = 0; i < path.getLength()-1; i++) {
+					int idx0 = map.getRangePtIdx(path.getX(i), path.getY(i));
+					int idx1 = map.getRangePtIdx(path.getX(i+1), path.getY(i+1));
+					double px = scan.x[idx0];
+					double py = scan.y[idx0];
+					double dx = (scan.x[idx1] - px) / psteps;
+					double dy = (scan.y[idx1] - py) / psteps;
+					ra = Math.atan2(scan.y[idx1] - py, scan.x[idx1] - px);
 					ra = (ra + Math.PI/2 + 2*Math.PI) % (2*Math.PI);
 					for (int j = 0; j < psteps; j++) {
 						synchronized (moving) {
-							moveTo(px[i] + j*dx, py[i] + j*dy, ra, SIMCMD.MOVE);
+							moveTo(px + j*dx, py + j*dy, ra, SIMCMD.MOVE);
 							try {
 								moving.wait();
 							} catch (InterruptedException e) {}
@@ -638,7 +898,7 @@ public class NavigationTask {
 	 * @param path the path to draw
 	 * @param color the color of the path to draw
 	 */
-	private void drawPath(Graphics2D gc, Path path, Color color) {
+	private void drawPath(Graphics2D gc, CellPath path, Color color) {
 		gc.setColor(color);
 		for (int i = 0; i < path.getLength(); i++)
 			gc.fillRect(path.getX(i), path.getY(i), 1, 1);
@@ -726,14 +986,26 @@ public class NavigationTask {
 	 */
 	private void moveTo(Point2D.Double pt, double ra, SIMCMD cmd) {
 
+		pt = nextTarget(pt);
+		player.moveTo(pt.x, pt.y, ra, 0, cmd);
+	}
+
+	/**
+	 * Gets the position to move to next, when switching to the next rover this is
+	 * its position (the given position is saved for the current rover).
+	 *
+	 * @param pt the position for the current rover
+	 * @return the position to move to
+	 */
+	private Point2D.Double nextTarget(Point2D.Double pt) {
+
 		multiSCnt++;
 		if (multiSCnt == multiSteps) {
 			int nextCnt = (multiCnt + 1) % multiNum;
 			nextPts.set(multiCnt, pt);
 			pt = nextPts.get(nextCnt);
 		}
-
-		player.moveTo(pt.x, pt.y, ra, 0, cmd);
+		return pt;
 	}
 
 	/**
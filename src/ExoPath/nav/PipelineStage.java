@@ -0,0 +1,205 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+/**
+ * A stage of the navigation pipeline. Each stage runs on its own thread and takes its input
+ * from a single slot: an item which was not taken yet is superseded by a newer one (latest wins),
+ * so a slow stage never works on stale data and the input of a stage never queues up.
+ * If the stage is not started, the items are processed directly on the thread offering them.
+ *
+ * @param <T> the item type
+ */
+public abstract class PipelineStage<T> {
+
+	/** The stage name (also used for the thread). */
+	private final String name;
+
+	/** The input slot (null if empty). */
+	private T slot;
+
+	/** The stage thread (null if not started). */
+	private Thread thread;
+
+	/** The number of processed items. */
+	private long processed = 0;
+
+	/** The number of dropped (superseded) items. */
+	private long dropped = 0;
+
+	/**
+	 * Instantiates a new pipeline stage.
+	 *
+	 * @param name the stage name
+	 */
+	public PipelineStage(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Processes an item.
+	 *
+	 * @param item the item
+	 */
+	protected abstract void process(T item);
+
+	/**
+	 * Called for an item which was superseded before it was processed (e.g. to release it).
+	 *
+	 * @param item the dropped item
+	 */
+	protected void dropped(T item) {
+	}
+
+	/**
+	 * Offers a new item to the stage, the item waiting in the slot (if any) is dropped.
+	 *
+	 * @param item the new item
+	 */
+	public void offer(T item) {
+
+		T old = null;
+		boolean direct;
+		synchronized (this) {
+			direct = thread == null;
+			if (!direct) {
+				old = slot;
+				slot = item;
+				if (old != null)
+					dropped++;
+				notifyAll();
+			}
+		}
+
+		if (direct) {
+			process(item);
+			synchronized (this) {
+				processed++;
+			}
+		}
+		else if (old != null)
+			dropped(old);
+	}
+
+	/**
+	 * Counts an item dropped by the stage itself (e.g. found to be stale when processed).
+	 */
+	protected synchronized void countDropped() {
+		dropped++;
+	}
+
+	/**
+	 * Starts the stage thread.
+	 */
+	public synchronized void start() {
+
+		if (thread != null)
+			return;
+
+		thread = new Thread(name) {
+			@Override
+			public void run() {
+				while (true) {
+					T item;
+					synchronized (PipelineStage.this) {
+						while (slot == null && thread == this) {
+							try {
+								PipelineStage.this.wait();
+							} catch (InterruptedException e) {}
+						}
+						if (thread != this)
+							return;
+						item = slot;
+						slot = null;
+					}
+					try {
+						process(item);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+					synchronized (PipelineStage.this) {
+						processed++;
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the stage thread, the following items are processed directly again.
+	 * An item waiting in the slot is dropped. Waits until the item in process is finished
+	 * (unless called by the stage thread itself).
+	 */
+	public void stop() {
+
+		T old;
+		Thread t;
+		synchronized (this) {
+			t = thread;
+			thread = null;
+			old = slot;
+			slot = null;
+			if (old != null)
+				dropped++;
+			notifyAll();
+		}
+		if (old != null)
+			dropped(old);
+
+		if (t != null && t != Thread.currentThread()) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Gets the stage name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of items waiting in the slot.
+	 *
+	 * @return the queue depth (0 or 1)
+	 */
+	public synchronized int getDepth() {
+		return slot == null ? 0 : 1;
+	}
+
+	/**
+	 * Gets the number of processed items (all items taken from the slot).
+	 *
+	 * @return the number of processed items
+	 */
+	public synchronized long getProcessed() {
+		return processed;
+	}
+
+	/**
+	 * Gets the number of dropped items (superseded by newer ones or stale).
+	 *
+	 * @return the number of dropped items
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+}
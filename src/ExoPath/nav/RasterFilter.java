@@ -0,0 +1,349 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+/**
+ * Filter operations working directly on byte planes (one unsigned byte per grid cell,
+ * indexed y*width+x) as used for the terrain layers. All working buffers are allocated
+ * once, so filtering a new scan does not create any objects.
+ * Cells outside of the grid are treated as 0 (zero edges).
+ * A filter instance is not thread safe, parallel workers need their own instances,
+ * they can filter disjoint regions of the same planes.
+ */
+public class RasterFilter {
+
+	/** The neighbour weight of the map blur kernel (0.3) as 16 bit fixed point value. */
+	public static final int BLUR_WEIGHT = 19661;
+
+	/** The grid width. */
+	private final int width;
+
+	/** The grid height. */
+	private final int height;
+
+	/** The element wise loops (vectorised if possible). */
+	private final RasterKernels kernels;
+
+	/** The intermediate plane for separable filters (allocated on first use). */
+	private byte[] tmp;
+
+	/** The padded line buffer for the dilation. */
+	private int[] line;
+
+	/** The block wise prefix maximum buffer for the dilation. */
+	private int[] prefix;
+
+	/** The block wise suffix maximum buffer for the dilation. */
+	private int[] suffix;
+
+	/** The horizontal sums of the previous row for the blur. */
+	private int[] sumPrev;
+
+	/** The horizontal sums of the current row for the blur. */
+	private int[] sumCurr;
+
+	/** The horizontal sums of the next row for the blur. */
+	private int[] sumNext;
+
+	/**
+	 * Instantiates a new raster filter for planes of the given size.
+	 *
+	 * @param width the grid width
+	 * @param height the grid height
+	 */
+	public RasterFilter(int width, int height) {
+		this(width, height, RasterKernels.INSTANCE);
+	}
+
+	/**
+	 * Instantiates a new raster filter with the given kernels (to compare the implementations).
+	 *
+	 * @param width the grid width
+	 * @param height the grid height
+	 * @param kernels the kernels
+	 */
+	RasterFilter(int width, int height, RasterKernels kernels) {
+
+		this.width = width;
+		this.height = height;
+		this.kernels = kernels;
+
+		sumPrev = new int[width];
+		sumCurr = new int[width];
+		sumNext = new int[width];
+		allocLines(1);
+	}
+
+	/**
+	 * Allocates the line buffers needed for a dilation with the given radius.
+	 *
+	 * @param radius the filter radius
+	 */
+	private void allocLines(int radius) {
+
+		int n = lineLength(Math.max(width, height), radius);
+		line = new int[n];
+		prefix = new int[n];
+		suffix = new int[n];
+	}
+
+	/**
+	 * Gets the padded line length for the dilation (a multiple of the window size).
+	 *
+	 * @param n the line length
+	 * @param radius the filter radius
+	 * @return the padded line length
+	 */
+	private static int lineLength(int n, int radius) {
+		int k = 2*radius + 1;
+		return (n + 2*radius + k - 1) / k * k;
+	}
+
+	/**
+	 * A maximum filter (grey value dilation) with a square window of 2*radius+1 cells.
+	 * The filter is separated into a horizontal and a vertical pass, each using the
+	 * van Herk/Gil-Werman method which needs three comparisons per cell for any radius.
+	 * The source and destination plane may be the same array.
+	 *
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param radius the filter radius
+	 */
+	public void dilate(byte[] src, byte[] dst, int radius) {
+		dilate(src, dst, radius, 0, 0, width, height);
+	}
+
+	/**
+	 * A maximum filter (see above) just for a region of the grid. Only the cells of the region
+	 * are written, the source cells within the filter radius around the region are read.
+	 *
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param radius the filter radius
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 */
+	public void dilate(byte[] src, byte[] dst, int radius, int x0, int y0, int x1, int y1) {
+
+		if (x0 >= x1 || y0 >= y1)
+			return;
+		if (tmp == null)
+			tmp = new byte[width * height];
+
+		// the vertical pass needs the horizontal results of the rows around the region
+		dilateRows(src, tmp, radius, x0, Math.max(0, y0 - radius), x1, Math.min(height, y1 + radius));
+		dilateColumns(tmp, dst, radius, x0, y0, x1, y1);
+	}
+
+	/**
+	 * The horizontal pass of the maximum filter for a region of the grid.
+	 * The 3 cell window (radius 1) is done with the element wise maximum kernel,
+	 * larger windows with the van Herk/Gil-Werman method.
+	 * The source and destination plane must be different arrays.
+	 *
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param radius the filter radius
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 */
+	public void dilateRows(byte[] src, byte[] dst, int radius, int x0, int y0, int x1, int y1) {
+
+		if (x0 >= x1 || y0 >= y1)
+			return;
+
+		if (radius == 1) {
+			for (int y = y0; y < y1; y++) {
+				int off = y * width;
+				// the edge cells have a missing (zero) neighbour, the max with 0 is the cell itself
+				int lo = Math.max(x0, 1);
+				int hi = Math.min(x1, width - 1);
+				if (x0 == 0)
+					dst[off] = (byte) Math.max(src[off] & 0xff, width > 1 ? src[off + 1] & 0xff : 0);
+				if (lo < hi)
+					kernels.max3(src, off + lo - 1, off + lo, off + lo + 1, dst, off + lo, hi - lo);
+				if (x1 == width && width > 1)
+					dst[off + width - 1] = (byte) Math.max(src[off + width - 2] & 0xff, src[off + width - 1] & 0xff);
+			}
+			return;
+		}
+
+		if (line.length < lineLength(Math.max(width, height), radius))
+			allocLines(radius); // only when the radius grows
+
+		for (int y = y0; y < y1; y++)
+			maxLine(src, dst, y * width, 1, width, radius, x0, x1);
+	}
+
+	/**
+	 * The vertical pass of the maximum filter for a region of the grid, the source rows
+	 * within the filter radius around the region are read. The 3 cell window (radius 1) is done
+	 * row by row (instead of column by column) with the maximum kernel of the horizontal pass.
+	 * The source and destination plane must be different arrays.
+	 *
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param radius the filter radius
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 */
+	public void dilateColumns(byte[] src, byte[] dst, int radius, int x0, int y0, int x1, int y1) {
+
+		if (x0 >= x1 || y0 >= y1)
+			return;
+
+		if (radius == 1) {
+			for (int y = y0; y < y1; y++) {
+				// a missing (zero) row is replaced by the row itself
+				int b = y * width + x0;
+				int a = y > 0 ? b - width : b;
+				int c = y + 1 < height ? b + width : b;
+				kernels.max3(src, a, b, c, dst, b, x1 - x0);
+			}
+			return;
+		}
+
+		if (line.length < lineLength(Math.max(width, height), radius))
+			allocLines(radius); // only when the radius grows
+
+		for (int x = x0; x < x1; x++)
+			maxLine(src, dst, x, width, height, radius, y0, y1);
+	}
+
+	/**
+	 * The one dimensional van Herk/Gil-Werman maximum filter.
+	 *
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param off the index of the first cell of the line
+	 * @param stride the index distance between two cells of the line
+	 * @param n the line length
+	 * @param radius the filter radius
+	 * @param lo the first line position to filter
+	 * @param hi the line position after the last one to filter
+	 */
+	private void maxLine(byte[] src, byte[] dst, int off, int stride, int n, int radius, int lo, int hi) {
+
+		int k = 2*radius + 1;
+		int len = lineLength(hi - lo, radius);
+
+		// the line part with zero padding outside of the grid
+		for (int i = 0, p = lo - radius; i < len; i++, p++)
+			line[i] = p >= 0 && p < n ? src[off + p*stride] & 0xff : 0;
+
+		// running maxima from the block start and from the block end
+		for (int b = 0; b < len; b += k) {
+			int e = b + k - 1;
+			prefix[b] = line[b];
+			for (int i = b + 1; i <= e; i++)
+				prefix[i] = Math.max(prefix[i-1], line[i]);
+			suffix[e] = line[e];
+			for (int i = e - 1; i >= b; i--)
+				suffix[i] = Math.max(suffix[i+1], line[i]);
+		}
+
+		// each window spans at most two blocks
+		for (int i = 0, j = off + lo*stride; i < hi - lo; i++, j += stride)
+			dst[j] = (byte) Math.max(suffix[i], prefix[i + 2*radius]);
+	}
+
+	/**
+	 * A 3x3 blur filter with the given neighbour weight and a center weight of 1.
+	 * The weight is a 16 bit fixed point value (65536 is 1.0), the result is rounded
+	 * and clamped to 255. The box sum is computed separably with three row buffers.
+	 * The source and destination plane must be different arrays.
+	 *
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param weight the neighbour weight as 16 bit fixed point value
+	 */
+	public void blur(byte[] src, byte[] dst, int weight) {
+		blur(src, dst, weight, 0, 0, width, height);
+	}
+
+	/**
+	 * A 3x3 blur filter (see above) just for a region of the grid. Only the cells of the region
+	 * are written, the source cells directly around the region are read.
+	 *
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param weight the neighbour weight as 16 bit fixed point value
+	 * @param x0 the first column of the region
+	 * @param y0 the first row of the region
+	 * @param x1 the column after the region
+	 * @param y1 the row after the region
+	 */
+	public void blur(byte[] src, byte[] dst, int weight, int x0, int y0, int x1, int y1) {
+
+		if (x0 >= x1 || y0 >= y1)
+			return;
+
+		if (y0 > 0)
+			rowSums(src, y0 - 1, sumPrev, x0, x1);
+		else
+			clearSums(sumPrev);
+		rowSums(src, y0, sumCurr, x0, x1);
+		for (int y = y0; y < y1; y++) {
+			if (y + 1 < height)
+				rowSums(src, y + 1, sumNext, x0, x1);
+			else
+				clearSums(sumNext);
+
+			kernels.blur(sumPrev, sumCurr, sumNext, x0, src, dst, y * width + x0, x1 - x0, weight);
+
+			int[] t = sumPrev; // rotate the row buffers
+			sumPrev = sumCurr;
+			sumCurr = sumNext;
+			sumNext = t;
+		}
+	}
+
+	/**
+	 * Computes the horizontal 3 cell sums of a row part.
+	 *
+	 * @param src the source plane
+	 * @param y the row
+	 * @param sums the buffer for the sums (indexed by column)
+	 * @param x0 the first column
+	 * @param x1 the column after the last one
+	 */
+	private void rowSums(byte[] src, int y, int[] sums, int x0, int x1) {
+
+		int off = y * width;
+		// the edge cells have a missing (zero) neighbour
+		int lo = Math.max(x0, 1);
+		int hi = Math.min(x1, width - 1);
+		if (x0 == 0)
+			sums[0] = (src[off] & 0xff) + (width > 1 ? src[off + 1] & 0xff : 0);
+		if (lo < hi)
+			kernels.sum3(src, off + lo, sums, lo, hi - lo);
+		if (x1 == width && width > 1)
+			sums[width - 1] = (src[off + width - 2] & 0xff) + (src[off + width - 1] & 0xff);
+	}
+
+	/**
+	 * Sets all sums of a row buffer to 0.
+	 *
+	 * @param sums the row buffer
+	 */
+	private void clearSums(int[] sums) {
+		for (int x = 0; x < width; x++)
+			sums[x] = 0;
+	}
+}
@@ -0,0 +1,147 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+/**
+ * The element wise inner loops of the raster filters and the map renderer. This class is
+ * the scalar implementation, the shared instance is the vectorised implementation
+ * (see {@link VectorKernels}) when the Vector API module (jdk.incubator.vector) is
+ * available at runtime. Both implementations give exactly the same results.
+ */
+class RasterKernels {
+
+	/** The kernels used by default (vectorised if possible). */
+	static final RasterKernels INSTANCE = create();
+
+	/**
+	 * Creates the vectorised kernels if the Vector API is available, otherwise the scalar ones.
+	 *
+	 * @return the kernels
+	 */
+	static RasterKernels create() {
+
+		try {
+			// loaded by name, so this class does not depend on the incubator module
+			return (RasterKernels) Class.forName("exopath.nav.VectorKernels").newInstance();
+		}
+		catch (Throwable e) {
+			// module not loaded (NoClassDefFoundError) or no usable vector shape
+			return new RasterKernels();
+		}
+	}
+
+	/**
+	 * Checks if the kernels are vectorised.
+	 *
+	 * @return true, if the kernels use the Vector API
+	 */
+	boolean isVectorized() {
+		return false;
+	}
+
+	/**
+	 * The element wise maximum of three ranges of a plane (unsigned values).
+	 * The source and destination plane must be different arrays.
+	 *
+	 * @param src the source plane
+	 * @param a the index of the first range
+	 * @param b the index of the second range
+	 * @param c the index of the third range
+	 * @param dst the destination plane
+	 * @param d the index of the destination range
+	 * @param n the range length
+	 */
+	void max3(byte[] src, int a, int b, int c, byte[] dst, int d, int n) {
+
+		for (int i = 0; i < n; i++) {
+			int v = Math.max(src[a + i] & 0xff, src[b + i] & 0xff);
+			dst[d + i] = (byte) Math.max(v, src[c + i] & 0xff);
+		}
+	}
+
+	/**
+	 * The horizontal 3 cell sums of a range of a plane (unsigned values). The cells before
+	 * and after the range are read, so the range must not touch the ends of a row.
+	 *
+	 * @param src the source plane
+	 * @param a the index of the first cell of the range
+	 * @param sums the buffer for the sums
+	 * @param s the index of the first sum
+	 * @param n the range length
+	 */
+	void sum3(byte[] src, int a, int[] sums, int s, int n) {
+
+		for (int i = 0; i < n; i++)
+			sums[s + i] = (src[a + i - 1] & 0xff) + (src[a + i] & 0xff) + (src[a + i + 1] & 0xff);
+	}
+
+	/**
+	 * The blur of a range of a row from the horizontal sums of the row and its neighbour rows
+	 * (see {@link RasterFilter#blur(byte[], byte[], int)}). The result is rounded and clamped
+	 * to 255. The source and destination plane must be different arrays.
+	 *
+	 * @param prev the sums of the previous row
+	 * @param curr the sums of the row
+	 * @param next the sums of the next row
+	 * @param s the index of the first sum
+	 * @param src the source plane
+	 * @param dst the destination plane
+	 * @param a the index of the first cell of the range
+	 * @param n the range length
+	 * @param weight the neighbour weight as 16 bit fixed point value
+	 */
+	void blur(int[] prev, int[] curr, int[] next, int s, byte[] src, byte[] dst, int a, int n, int weight) {
+
+		int center = 65536 - weight; // the center cell is also part of the box sum
+		for (int i = 0; i < n; i++) {
+			int box = prev[s + i] + curr[s + i] + next[s + i];
+			int v = (weight * box + center * (src[a + i] & 0xff) + 32768) >> 16;
+			dst[a + i] = (byte) Math.min(v, 255); // branch free clamp
+		}
+	}
+
+	/**
+	 * Blends the colours of a range over the pixel values of a range.
+	 *
+	 * @param dst the pixel values
+	 * @param d the index of the first pixel value
+	 * @param src the colours (alpha in the top byte)
+	 * @param s the index of the first colour
+	 * @param n the range length
+	 */
+	void blend(int[] dst, int d, int[] src, int s, int n) {
+
+		for (int i = 0; i < n; i++)
+			dst[d + i] = blend(dst[d + i], src[s + i]);
+	}
+
+	/**
+	 * Blends a colour over a pixel value.
+	 *
+	 * @param dst the pixel value
+	 * @param src the colour (alpha in the top byte)
+	 * @return the new pixel value
+	 */
+	static int blend(int dst, int src) {
+
+		int a = src >>> 24;
+		int na = 255 - a;
+
+		// the outer components in parallel (rounded division by 255)
+		int rb = (src & 0xff00ff) * a + (dst & 0xff00ff) * na + 0x800080;
+		rb = ((rb + ((rb >>> 8) & 0xff00ff)) >>> 8) & 0xff00ff;
+		int g = (src & 0xff00) * a + (dst & 0xff00) * na + 0x8000;
+		g = ((g + ((g >>> 8) & 0xff00)) >>> 8) & 0xff00;
+		return rb | g;
+	}
+}
@@ -0,0 +1,167 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the range points of a scan to one representative point per map cell.
+ * The points are binned by their cell index with a generation stamped slot per map cell
+ * (no hashing), the parameters of the points of a cell are aggregated as selected
+ * and the world coordinates of the representative are the mean of the points.
+ * Points outside of the map are dropped.
+ */
+public class ScanDecimator {
+
+	/**
+	 * The aggregation of a point parameter within a cell.
+	 */
+	public enum Aggregation {
+
+		/** The value of the last point (as the map keeps it without decimation). */
+		LAST,
+
+		/** The maximum value. */
+		MAX,
+
+		/** The rounded mean value. */
+		MEAN
+	}
+
+	/** The aggregation of the obstacle values. */
+	public Aggregation obs = Aggregation.MAX;
+
+	/** The aggregation of the slope values. */
+	public Aggregation slp = Aggregation.MAX;
+
+	/** The aggregation of the ground values. */
+	public Aggregation grd = Aggregation.MEAN;
+
+	/** The aggregation of the hazard values. */
+	public Aggregation haz = Aggregation.MAX;
+
+	/** The generation stamp of each map cell (the cell has a representative if it equals gen). */
+	private final int[] stamp;
+
+	/** The representative index of each map cell. */
+	private final int[] slot;
+
+	/** The current generation. */
+	private int gen = 0;
+
+	/** The number of points per representative. */
+	private int[] count = new int[0];
+
+	/** The parameter sums per representative (for the mean aggregation). */
+	private int[][] sum = new int[4][0];
+
+	/** The coordinate sums per representative. */
+	private double[][] pos = new double[3][0];
+
+	/**
+	 * Instantiates a new scan decimator.
+	 *
+	 * @param cells the number of map cells
+	 */
+	public ScanDecimator(int cells) {
+		stamp = new int[cells];
+		slot = new int[cells];
+	}
+
+	/**
+	 * Reduces the range points to one representative per map cell.
+	 *
+	 * @param src the range points
+	 * @param dst the frame for the representatives (different from src)
+	 */
+	public void decimate(ScanFrame src, ScanFrame dst) {
+
+		if (++gen == Integer.MAX_VALUE) { // reset the stamps on overflow
+			Arrays.fill(stamp, 0);
+			gen = 1;
+		}
+		if (count.length < src.size) {
+			int n = Math.max(src.size, 2 * count.length);
+			count = new int[n];
+			sum = new int[4][n];
+			pos = new double[3][n];
+		}
+		dst.ensureCapacity(src.size);
+		dst.setHeader(src);
+
+		int n = 0;
+		for (int i = 0; i < src.size; i++) {
+			int c = src.cell[i];
+			if (c < 0)
+				continue;
+
+			int k;
+			if (stamp[c] != gen) {
+				// the first point of the cell
+				stamp[c] = gen;
+				k = slot[c] = n++;
+				count[k] = 0;
+				sum[0][k] = sum[1][k] = sum[2][k] = sum[3][k] = 0;
+				pos[0][k] = pos[1][k] = pos[2][k] = 0;
+				dst.cell[k] = c;
+				dst.obs[k] = dst.slp[k] = dst.grd[k] = dst.haz[k] = 0;
+			}
+			else
+				k = slot[c];
+
+			count[k]++;
+			pos[0][k] += src.x[i];
+			pos[1][k] += src.y[i];
+			pos[2][k] += src.z[i];
+			dst.obs[k] = aggregate(obs, dst.obs[k], src.obs[i], sum[0], k);
+			dst.slp[k] = aggregate(slp, dst.slp[k], src.slp[i], sum[1], k);
+			dst.grd[k] = aggregate(grd, dst.grd[k], src.grd[i], sum[2], k);
+			dst.haz[k] = aggregate(haz, dst.haz[k], src.haz[i], sum[3], k);
+		}
+
+		for (int k = 0; k < n; k++) {
+			int m = count[k];
+			dst.x[k] = (float) (pos[0][k] / m);
+			dst.y[k] = (float) (pos[1][k] / m);
+			dst.z[k] = (float) (pos[2][k] / m);
+			if (obs == Aggregation.MEAN) dst.obs[k] = (byte) ((sum[0][k] + m/2) / m);
+			if (slp == Aggregation.MEAN) dst.slp[k] = (byte) ((sum[1][k] + m/2) / m);
+			if (grd == Aggregation.MEAN) dst.grd[k] = (byte) ((sum[2][k] + m/2) / m);
+			if (haz == Aggregation.MEAN) dst.haz[k] = (byte) ((sum[3][k] + m/2) / m);
+		}
+		dst.size = n;
+	}
+
+	/**
+	 * Aggregates a parameter value of a point.
+	 *
+	 * @param mode the aggregation
+	 * @param value the aggregated value so far
+	 * @param v the value of the point
+	 * @param sum the parameter sums (for the mean)
+	 * @param k the representative index
+	 * @return the aggregated value
+	 */
+	private static byte aggregate(Aggregation mode, byte value, byte v, int[] sum, int k) {
+
+		switch (mode) {
+		case MAX:
+			return (v & 0xff) > (value & 0xff) ? v : value;
+		case MEAN:
+			sum[k] += v & 0xff;
+			return value;
+		default:
+			return v;
+		}
+	}
+}
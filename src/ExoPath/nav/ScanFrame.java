@@ -0,0 +1,216 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import javaclient3.structures.PlayerColor;
+import javaclient3.structures.PlayerPoint3d;
+import javaclient3.structures.pointcloud3d.PlayerPointCloud3DElement;
+
+/**
+ * The range points of a scan in columnar form, one primitive array per point parameter
+ * (the range point index is the array index). The arrays are allocated once, so a new scan
+ * does not create any objects (the capacity grows geometrically for denser scans and is then
+ * kept). For each point the related map cell is kept as cell index
+ * y*width+x of the map grid (-1 for points outside of the map).
+ */
+public class ScanFrame {
+
+	/** The number of range points. */
+	public int size;
+
+	/** The x world coordinates. */
+	public float[] x;
+
+	/** The y world coordinates. */
+	public float[] y;
+
+	/** The z world coordinates. */
+	public float[] z;
+
+	/** The ground condition indicators. */
+	public byte[] grd;
+
+	/** The obstacle indicators. */
+	public byte[] obs;
+
+	/** The hazard indicators. */
+	public byte[] haz;
+
+	/** The slope values (in degree). */
+	public byte[] slp;
+
+	/** The map cell indices (y*width+x, -1 outside of the map). */
+	public int[] cell;
+
+	/** The map width used for the cell indices. */
+	private int width;
+
+	/** The first map column with range points. */
+	public int minX;
+
+	/** The first map row with range points. */
+	public int minY;
+
+	/** The map column after the last one with range points. */
+	public int maxX;
+
+	/** The map row after the last one with range points. */
+	public int maxY;
+
+	/** The x world coordinate of the rover for the scan. */
+	public double posX;
+
+	/** The y world coordinate of the rover for the scan. */
+	public double posY;
+
+	/** The global grid column of the map cell 0,0 for the scan. */
+	public int originX;
+
+	/** The global grid row of the map cell 0,0 for the scan. */
+	public int originY;
+
+	/**
+	 * Instantiates a new scan frame.
+	 *
+	 * @param capacity the maximum number of range points
+	 */
+	public ScanFrame(int capacity) {
+		allocate(capacity);
+	}
+
+	/**
+	 * Allocates the arrays for the given capacity (the data are not kept).
+	 *
+	 * @param capacity the maximum number of range points
+	 */
+	private void allocate(int capacity) {
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		grd = new byte[capacity];
+		obs = new byte[capacity];
+		haz = new byte[capacity];
+		slp = new byte[capacity];
+		cell = new int[capacity];
+	}
+
+	/**
+	 * Gets the maximum number of range points.
+	 *
+	 * @return the capacity
+	 */
+	public int capacity() {
+		return cell.length;
+	}
+
+	/**
+	 * Ensures the capacity for the given number of range points. The capacity is at least
+	 * doubled when it grows, so a slowly increasing point count causes just a few allocations.
+	 *
+	 * @param n the number of range points
+	 */
+	public void ensureCapacity(int n) {
+		if (n > cell.length)
+			allocate(Math.max(n, 2 * cell.length));
+	}
+
+	/**
+	 * Sets the range points from the Player point cloud data in a single pass.
+	 * The world coordinates are transformed to the map cells by the affine transform
+	 * floor(world/res) - origin with the precomputed inverse resolution.
+	 *
+	 * @param points the Player point cloud data
+	 * @param first the index of the first range point within the data
+	 * @param res the map resolution
+	 * @param originX the global grid column of the map cell 0,0
+	 * @param originY the global grid row of the map cell 0,0
+	 * @param width the map width
+	 * @param height the map height
+	 */
+	public void setData(PlayerPointCloud3DElement[] points, int first, double res,
+			int originX, int originY, int width, int height) {
+
+		ensureCapacity(points.length - first);
+
+		double scale = 1 / res;
+		this.width = width;
+		size = points.length - first;
+		minX = width;
+		minY = height;
+		maxX = 0;
+		maxY = 0;
+
+		for (int i = 0; i < size; i++) {
+			PlayerPointCloud3DElement pce = points[first + i];
+			PlayerPoint3d pt = pce.getPoint();
+			PlayerColor c = pce.getColor();
+			x[i] = (float) pt.getPx();
+			y[i] = (float) pt.getPy();
+			z[i] = (float) pt.getPz();
+			grd[i] = (byte) c.getRed();   // the ground condition value is coded to the red channel
+			obs[i] = (byte) c.getGreen(); // the obstacle flag is coded to the green channel
+			haz[i] = (byte) c.getBlue();  // the hazard indicator  is coded to the blue channel
+			slp[i] = (byte) c.getAlpha(); // the slope value is coded to the alpha channel
+
+			int mx = (int) Math.floor(pt.getPx() * scale) - originX;
+			int my = (int) Math.floor(pt.getPy() * scale) - originY;
+			if (mx < 0 || my < 0 || mx >= width || my >= height) {
+				cell[i] = -1;
+				continue;
+			}
+			cell[i] = my * width + mx;
+			if (mx < minX) minX = mx;
+			if (my < minY) minY = my;
+			if (mx >= maxX) maxX = mx + 1;
+			if (my >= maxY) maxY = my + 1;
+		}
+	}
+
+	/**
+	 * Copies the scan data besides the range points (the map grid, the bounding box
+	 * of the points and the rover position) from another frame.
+	 *
+	 * @param src the frame to copy from
+	 */
+	public void setHeader(ScanFrame src) {
+		width = src.width;
+		minX = src.minX;
+		minY = src.minY;
+		maxX = src.maxX;
+		maxY = src.maxY;
+		posX = src.posX;
+		posY = src.posY;
+		originX = src.originX;
+		originY = src.originY;
+	}
+
+	/**
+	 * Gets the map column of a range point.
+	 *
+	 * @param i the range point index
+	 * @return the map column (only valid for points within the map)
+	 */
+	public int getMapX(int i) {
+		return cell[i] % width;
+	}
+
+	/**
+	 * Gets the map row of a range point.
+	 *
+	 * @param i the range point index
+	 * @return the map row (only valid for points within the map)
+	 */
+	public int getMapY(int i) {
+		return cell[i] / width;
+	}
+}
@@ -0,0 +1,89 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of reusable scan frames (at least two, so a new scan can be written to a free frame
+ * while the previous one is still in use, e.g. by the planning). A frame is taken from the
+ * pool with acquire and given back with release. If all frames are in use, a new frame
+ * is added to the pool, so the number of frames is the maximum number used at the same time.
+ */
+public class ScanFramePool {
+
+	/** The frames of the pool. */
+	private final List<ScanFrame> frames = new ArrayList<ScanFrame>();
+
+	/** The frames not in use. */
+	private final List<ScanFrame> free = new ArrayList<ScanFrame>();
+
+	/** The initial capacity of new frames. */
+	private final int capacity;
+
+	/**
+	 * Instantiates a new scan frame pool.
+	 *
+	 * @param size the initial number of frames (at least 2)
+	 * @param capacity the initial capacity of the frames
+	 */
+	public ScanFramePool(int size, int capacity) {
+
+		this.capacity = capacity;
+		for (int i = 0; i < Math.max(2, size); i++) {
+			ScanFrame f = new ScanFrame(capacity);
+			frames.add(f);
+			free.add(f);
+		}
+	}
+
+	/**
+	 * Takes a free frame from the pool.
+	 *
+	 * @param n the number of range points the frame has to hold
+	 * @return the frame
+	 */
+	public synchronized ScanFrame acquire(int n) {
+
+		ScanFrame f;
+		if (free.isEmpty()) {
+			f = new ScanFrame(capacity);
+			frames.add(f);
+		}
+		else
+			f = free.remove(free.size() - 1);
+
+		f.ensureCapacity(n);
+		return f;
+	}
+
+	/**
+	 * Gives a frame back to the pool.
+	 *
+	 * @param f the frame (null is ignored)
+	 */
+	public synchronized void release(ScanFrame f) {
+		if (f != null && !free.contains(f))
+			free.add(f);
+	}
+
+	/**
+	 * Gets the number of frames of the pool.
+	 *
+	 * @return the number of frames
+	 */
+	public synchronized int size() {
+		return frames.size();
+	}
+}
@@ -0,0 +1,137 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+/**
+ * The terrain cost model (the rover profile) with the thresholds for the traversability
+ * and the weights for the movement cost of a map cell. The model is compiled to lookup tables
+ * with one entry per parameter value, a cell cost is then the sum of the table entries of the
+ * cell parameters. Not traversable cells have an infinite cost.
+ * The clearance of a cell (the distance to the nearest obstacle) adds the rover footprint
+ * (cells within the footprint radius are not traversable) and a proximity cost.
+ */
+public class TerrainCostModel {
+
+	/** The cost value for blocked (not traversable) cells. */
+	public static final float BLOCKED = Float.POSITIVE_INFINITY;
+
+	/** The maximum obstacle value for a traversable cell. */
+	public int maxObstacle = 0;
+
+	/** The minimum valid value for a traversable cell (2 means valid range point data). */
+	public int minValid = 2;
+
+	/** The maximum ground value for a traversable cell. */
+	public int maxGround = 30;
+
+	/** The maximum slope for a traversable cell (in degree). */
+	public int maxSlope = 15;
+
+	/** The slope above which the slope adds to the cost. */
+	public int slopeMin = 5;
+
+	/** The divisor for the slope cost. */
+	public float slopeDiv = 5;
+
+	/** The ground value above which the ground adds to the cost. */
+	public int groundMin = 5;
+
+	/** The divisor for the ground cost. */
+	public float groundDiv = 10;
+
+	/** The divisor for the hazard cost. */
+	public float hazardDiv = 128;
+
+	/** The rover footprint radius (in cells), cells with a smaller clearance are not traversable. */
+	public float footprint = 0;
+
+	/** The clearance (in cells) below which the proximity of an obstacle adds to the cost. */
+	public float proximity = 0;
+
+	/** The divisor for the proximity cost. */
+	public float proximityDiv = 1;
+
+	/** The compiled lookup tables (one per terrain parameter). */
+	private final float[][] lut = new float[TerrainLayers.LAYERS][256];
+
+	/**
+	 * Instantiates a new cost model with the default rover profile.
+	 */
+	public TerrainCostModel() {
+		compile();
+	}
+
+	/**
+	 * Compiles the thresholds and weights to the lookup tables.
+	 * Has to be called after changing the model parameters.
+	 */
+	public void compile() {
+
+		for (int v = 0; v < 256; v++) {
+			lut[Map.SLP][v] = v > maxSlope ? BLOCKED : v > slopeMin ? v / slopeDiv : 0;
+			lut[Map.GRD][v] = v > maxGround ? BLOCKED : v > groundMin ? v / groundDiv : 0;
+			lut[Map.HAZ][v] = v / hazardDiv;
+			lut[Map.OBS][v] = v > maxObstacle ? BLOCKED : 0;
+			lut[Map.VAL][v] = v < minValid ? BLOCKED : 0;
+		}
+	}
+
+	/**
+	 * Gets the cost for a cell with the given parameter values.
+	 *
+	 * @param slp the slope value
+	 * @param grd the ground value
+	 * @param obs the obstacle value
+	 * @param haz the hazard value
+	 * @param val the valid value
+	 * @return the cell cost or BLOCKED
+	 */
+	public float getCost(int slp, int grd, int obs, int haz, int val) {
+		return lut[Map.SLP][slp] + lut[Map.GRD][grd] + lut[Map.HAZ][haz] + lut[Map.OBS][obs] + lut[Map.VAL][val];
+	}
+
+	/**
+	 * Gets the cost for a cell with the given clearance.
+	 *
+	 * @param clearance the distance to the nearest obstacle (in cells)
+	 * @return the clearance cost or BLOCKED
+	 */
+	public float getClearanceCost(float clearance) {
+		return clearance < footprint ? BLOCKED : clearance < proximity ? (proximity - clearance) / proximityDiv : 0;
+	}
+
+	/**
+	 * Gets the clearance up to which the clearance cost depends on the clearance.
+	 *
+	 * @return the clearance range (in cells)
+	 */
+	public float getClearanceRange() {
+		return Math.max(footprint, proximity);
+	}
+
+	/**
+	 * Computes the cell costs for a part of a terrain layer row.
+	 *
+	 * @param terrain the terrain layers
+	 * @param idx the terrain index of the first cell
+	 * @param cost the cost plane
+	 * @param costIdx the cost plane index of the first cell
+	 * @param len the number of cells
+	 */
+	public void compute(TerrainLayers terrain, int idx, float[] cost, int costIdx, int len) {
+
+		for (int e = idx + len; idx < e; idx++, costIdx++)
+			cost[costIdx] = getCost(terrain.get(Map.SLP, idx), terrain.get(Map.GRD, idx),
+					terrain.get(Map.OBS, idx), terrain.get(Map.HAZ, idx), terrain.get(Map.VAL, idx));
+	}
+}
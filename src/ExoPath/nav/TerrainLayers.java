@@ -0,0 +1,304 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The storage for the terrain parameter layers of a grid.
+ * Each layer (slope, ground, obstacle, hazard and valid flag) is kept as one contiguous
+ * plane of bytes, the cell at x, y is found at the index y*width+x within each plane.
+ * The planes are either held on the java heap or off-heap within a (direct) byte buffer.
+ */
+public abstract class TerrainLayers {
+
+	/** The number of terrain layers (see the parameter indices of the map). */
+	public static final int LAYERS = 5;
+
+	/** The grid width. */
+	protected final int width;
+
+	/** The grid height. */
+	protected final int height;
+
+	/**
+	 * Instantiates new terrain layers.
+	 *
+	 * @param width the grid width
+	 * @param height the grid height
+	 */
+	protected TerrainLayers(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Allocates terrain layers on the java heap.
+	 *
+	 * @param width the grid width
+	 * @param height the grid height
+	 * @return the new terrain layers
+	 */
+	public static TerrainLayers allocate(int width, int height) {
+		return new Heap(width, height);
+	}
+
+	/**
+	 * Allocates terrain layers outside of the java heap.
+	 *
+	 * @param width the grid width
+	 * @param height the grid height
+	 * @return the new terrain layers
+	 */
+	public static TerrainLayers allocateDirect(int width, int height) {
+		return new Direct(ByteBuffer.allocateDirect(LAYERS * width * height), width, height);
+	}
+
+	/**
+	 * Wraps a given buffer (e.g. a memory mapped file region) as terrain layers.
+	 * The buffer must provide at least LAYERS*width*height bytes from its current position.
+	 *
+	 * @param buffer the buffer holding the planes one after another
+	 * @param width the grid width
+	 * @param height the grid height
+	 * @return the terrain layers backed by the buffer
+	 */
+	public static TerrainLayers wrap(ByteBuffer buffer, int width, int height) {
+		return new Direct(buffer.slice(), width, height);
+	}
+
+	/**
+	 * Gets the grid width.
+	 *
+	 * @return the grid width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the grid height.
+	 *
+	 * @return the grid height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the value of a terrain parameter.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param idx the cell index (y*width+x)
+	 * @return the unsigned parameter value
+	 */
+	public abstract int get(int prop, int idx);
+
+	/**
+	 * Sets the value of a terrain parameter.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param idx the cell index (y*width+x)
+	 * @param value the parameter value (0..255)
+	 */
+	public abstract void set(int prop, int idx, int value);
+
+	/**
+	 * Copies a part of a plane to the given array.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param idx the index of the first cell
+	 * @param dst the destination array
+	 * @param off the offset within the destination array
+	 * @param len the number of cells to copy
+	 */
+	public abstract void get(int prop, int idx, byte[] dst, int off, int len);
+
+	/**
+	 * Copies values from the given array into a plane.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param idx the index of the first cell
+	 * @param src the source array
+	 * @param off the offset within the source array
+	 * @param len the number of cells to copy
+	 */
+	public abstract void set(int prop, int idx, byte[] src, int off, int len);
+
+	/**
+	 * Sets a range of cells of a plane to the same value.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param idx the index of the first cell
+	 * @param len the number of cells to set
+	 * @param value the parameter value (0..255)
+	 */
+	public abstract void fill(int prop, int idx, int len, int value);
+
+	/**
+	 * Copies a grid row of a terrain parameter to the given array.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param y the row
+	 * @param dst the destination array (at least width long)
+	 */
+	public void getRow(int prop, int y, byte[] dst) {
+		get(prop, y * width, dst, 0, width);
+	}
+
+	/**
+	 * Sets a grid row of a terrain parameter from the given array.
+	 *
+	 * @param prop the terrain parameter index
+	 * @param y the row
+	 * @param src the source array (at least width long)
+	 */
+	public void setRow(int prop, int y, byte[] src) {
+		set(prop, y * width, src, 0, width);
+	}
+
+	/**
+	 * Sets all terrain parameters of all cells to 0.
+	 */
+	public void clear() {
+		for (int prop = 0; prop < LAYERS; prop++)
+			fill(prop, 0, width * height, 0);
+	}
+
+	/**
+	 * The terrain layers held as byte arrays on the java heap.
+	 */
+	public static class Heap extends TerrainLayers {
+
+		/** The planes, one byte array per terrain parameter. */
+		private final byte[][] planes;
+
+		/**
+		 * Instantiates new heap terrain layers.
+		 *
+		 * @param width the grid width
+		 * @param height the grid height
+		 */
+		Heap(int width, int height) {
+			super(width, height);
+			planes = new byte[LAYERS][width * height];
+		}
+
+		/**
+		 * Gets the plane array of a terrain parameter for direct access.
+		 *
+		 * @param prop the terrain parameter index
+		 * @return the plane array
+		 */
+		public byte[] plane(int prop) {
+			return planes[prop];
+		}
+
+		@Override
+		public int get(int prop, int idx) {
+			return planes[prop][idx] & 0xff;
+		}
+
+		@Override
+		public void set(int prop, int idx, int value) {
+			planes[prop][idx] = (byte) value;
+		}
+
+		@Override
+		public void get(int prop, int idx, byte[] dst, int off, int len) {
+			System.arraycopy(planes[prop], idx, dst, off, len);
+		}
+
+		@Override
+		public void set(int prop, int idx, byte[] src, int off, int len) {
+			System.arraycopy(src, off, planes[prop], idx, len);
+		}
+
+		@Override
+		public void fill(int prop, int idx, int len, int value) {
+			Arrays.fill(planes[prop], idx, idx + len, (byte) value);
+		}
+	}
+
+	/**
+	 * The terrain layers held within a byte buffer (off-heap or memory mapped).
+	 * The planes are stored one after another.
+	 */
+	public static class Direct extends TerrainLayers {
+
+		/** The buffer holding all planes. */
+		private final ByteBuffer buffer;
+
+		/** The plane size in bytes. */
+		private final int planeSize;
+
+		/** A small buffer to fill plane ranges with bulk puts. */
+		private final byte[] fillBuf = new byte[256];
+
+		/**
+		 * Instantiates new buffer backed terrain layers.
+		 *
+		 * @param buffer the buffer (position 0 is the first cell of the first plane)
+		 * @param width the grid width
+		 * @param height the grid height
+		 */
+		Direct(ByteBuffer buffer, int width, int height) {
+			super(width, height);
+			this.buffer = buffer;
+			this.planeSize = width * height;
+		}
+
+		/**
+		 * Gets the underlying buffer.
+		 *
+		 * @return the buffer
+		 */
+		public ByteBuffer buffer() {
+			return buffer;
+		}
+
+		@Override
+		public int get(int prop, int idx) {
+			return buffer.get(prop * planeSize + idx) & 0xff;
+		}
+
+		@Override
+		public void set(int prop, int idx, int value) {
+			buffer.put(prop * planeSize + idx, (byte) value);
+		}
+
+		@Override
+		public void get(int prop, int idx, byte[] dst, int off, int len) {
+			ByteBuffer b = buffer.duplicate();
+			b.position(prop * planeSize + idx);
+			b.get(dst, off, len);
+		}
+
+		@Override
+		public void set(int prop, int idx, byte[] src, int off, int len) {
+			ByteBuffer b = buffer.duplicate();
+			b.position(prop * planeSize + idx);
+			b.put(src, off, len);
+		}
+
+		@Override
+		public synchronized void fill(int prop, int idx, int len, int value) {
+			Arrays.fill(fillBuf, (byte) value);
+			ByteBuffer b = buffer.duplicate();
+			b.position(prop * planeSize + idx);
+			for (int n = len; n > 0; n -= fillBuf.length)
+				b.put(fillBuf, 0, Math.min(n, fillBuf.length));
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The raster kernels with the Vector API (Java 17+, compiled and run with
+ * --add-modules jdk.incubator.vector). The preferred vector shape of the platform is used
+ * (SSE/AVX on x86, NEON on ARM), the remainder of each range is done by the scalar loops.
+ * Only {@link RasterKernels#create()} instantiates this class (by name).
+ */
+class VectorKernels extends RasterKernels {
+
+	/** The byte lanes. */
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+	/** The int lanes. */
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+	/** The byte lanes widened to int lanes (at least 64 bits, one or more int vectors). */
+	private static final VectorSpecies<Byte> PACKED = INTS.vectorBitSize() <= 256
+		? ByteVector.SPECIES_64 : VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.vectorBitSize() / 4));
+
+	/** The number of int vectors per packed byte vector. */
+	private static final int PARTS = PACKED.length() / INTS.length();
+
+	/**
+	 * Instantiates the vectorised kernels.
+	 *
+	 * @throws UnsupportedOperationException if the platform has no vector registers
+	 */
+	VectorKernels() {
+		if (INTS.vectorBitSize() < 128)
+			throw new UnsupportedOperationException("no vector shape");
+	}
+
+	@Override
+	boolean isVectorized() {
+		return true;
+	}
+
+	@Override
+	void max3(byte[] src, int a, int b, int c, byte[] dst, int d, int n) {
+
+		int i = 0;
+		for (int end = BYTES.loopBound(n); i < end; i += BYTES.length()) {
+			// the signed maximum of the values with flipped sign bits is the unsigned maximum
+			ByteVector va = ByteVector.fromArray(BYTES, src, a + i).lanewise(VectorOperators.XOR, (byte) 0x80);
+			ByteVector vb = ByteVector.fromArray(BYTES, src, b + i).lanewise(VectorOperators.XOR, (byte) 0x80);
+			ByteVector vc = ByteVector.fromArray(BYTES, src, c + i).lanewise(VectorOperators.XOR, (byte) 0x80);
+			va.max(vb).max(vc).lanewise(VectorOperators.XOR, (byte) 0x80).intoArray(dst, d + i);
+		}
+		super.max3(src, a + i, b + i, c + i, dst, d + i, n - i);
+	}
+
+	@Override
+	void sum3(byte[] src, int a, int[] sums, int s, int n) {
+
+		int i = 0;
+		for (int end = PACKED.loopBound(n); i < end; i += PACKED.length()) {
+			ByteVector l = ByteVector.fromArray(PACKED, src, a + i - 1);
+			ByteVector m = ByteVector.fromArray(PACKED, src, a + i);
+			ByteVector r = ByteVector.fromArray(PACKED, src, a + i + 1);
+			for (int p = 0; p < PARTS; p++)
+				widen(l, p).add(widen(m, p)).add(widen(r, p)).intoArray(sums, s + i + p * INTS.length());
+		}
+		super.sum3(src, a + i, sums, s + i, n - i);
+	}
+
+	@Override
+	void blur(int[] prev, int[] curr, int[] next, int s, byte[] src, byte[] dst, int a, int n, int weight) {
+
+		int center = 65536 - weight;
+		int i = 0;
+		for (int end = PACKED.loopBound(n); i < end; i += PACKED.length()) {
+			ByteVector c = ByteVector.fromArray(PACKED, src, a + i);
+			ByteVector out = ByteVector.zero(PACKED);
+			for (int p = 0; p < PARTS; p++) {
+				int j = s + i + p * INTS.length();
+				IntVector box = IntVector.fromArray(INTS, prev, j)
+					.add(IntVector.fromArray(INTS, curr, j))
+					.add(IntVector.fromArray(INTS, next, j));
+				IntVector v = box.mul(weight).add(widen(c, p).mul(center)).add(32768)
+					.lanewise(VectorOperators.ASHR, 16).min(255);
+				out = out.or((ByteVector) v.convertShape(VectorOperators.I2B, PACKED, -p));
+			}
+			out.intoArray(dst, a + i);
+		}
+		super.blur(prev, curr, next, s + i, src, dst, a + i, n - i, weight);
+	}
+
+	@Override
+	void blend(int[] dst, int d, int[] src, int s, int n) {
+
+		int i = 0;
+		for (int end = INTS.loopBound(n); i < end; i += INTS.length()) {
+			IntVector c = IntVector.fromArray(INTS, src, s + i);
+			IntVector p = IntVector.fromArray(INTS, dst, d + i);
+			IntVector a = c.lanewise(VectorOperators.LSHR, 24);
+			IntVector na = a.neg().add(255);
+
+			// the same integer math as the scalar blend, lane by lane
+			IntVector rb = c.and(0xff00ff).mul(a).add(p.and(0xff00ff).mul(na)).add(0x800080);
+			rb = rb.add(rb.lanewise(VectorOperators.LSHR, 8).and(0xff00ff))
+				.lanewise(VectorOperators.LSHR, 8).and(0xff00ff);
+			IntVector g = c.and(0xff00).mul(a).add(p.and(0xff00).mul(na)).add(0x8000);
+			g = g.add(g.lanewise(VectorOperators.LSHR, 8).and(0xff00))
+				.lanewise(VectorOperators.LSHR, 8).and(0xff00);
+			rb.or(g).intoArray(dst, d + i);
+		}
+		super.blend(dst, d + i, src, s + i, n - i);
+	}
+
+	/**
+	 * Widens a part of the byte lanes to unsigned int lanes.
+	 *
+	 * @param v the byte lanes
+	 * @param part the part (0 to PARTS-1)
+	 * @return the int lanes
+	 */
+	private static IntVector widen(ByteVector v, int part) {
+		return ((IntVector) v.convertShape(VectorOperators.B2I, INTS, part)).and(0xff);
+	}
+}
@@ -16,6 +16,7 @@ import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
 import exopath.client.PlayerTask;
+import exopath.nav.NavigationTask;
 
 /**
  * The activator class controls the plug-in life cycle.
@@ -47,6 +48,7 @@ public class Activator extends AbstractUIPlugin {
 		plugin = null;
 		super.stop(context);
 
+		NavigationTask.getTask().stop();
 		PlayerTask.getTask().disconnect();
 	}
 
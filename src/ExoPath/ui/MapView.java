@@ -43,6 +43,7 @@ import exopath.client.PlayerTask;
 import exopath.client.PlayerTask.Device;
 import exopath.client.PlayerTask.PlayerListener;
 import exopath.client.PlayerTask.SIMCMD;
+import exopath.nav.CellPath;
 import exopath.nav.ExplorationTree;
 import exopath.nav.NavigationTask;
 import exopath.nav.NavigationTask.NavigationListener;
@@ -101,6 +102,9 @@ public class MapView extends ImageView {
 		/** A moving flag to indicate manual movement command is processed. */
 		private boolean moving = false;
 
+		/** The path to the manual goal (checked on the navigation map). */
+		private final CellPath goalPath = new CellPath();
+
 		/**
 		 * Instantiates a map image canvas given its parent composite.
 		 *
@@ -348,6 +352,11 @@ public class MapView extends ImageView {
 				if (worldPos == null)
 					return;
 
+				// a goal on the navigation map has to be reachable (single path search)
+				if (navigation.isOnMap(worldPos[0], worldPos[1])
+						&& !navigation.findPath(worldPos[0], worldPos[1], goalPath))
+					return;
+
 				moving = true; // set the busy flag until new data arrive
 				player.moveTo(worldPos[0], worldPos[1], 0, SIMCMD.MOVE);
 			}
@@ -0,0 +1,115 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.newdawn.slick.util.pathfinding.Path;
+
+/**
+ * Tests the point to point searches (A* and jump point search) against the Dijkstra search:
+ * the same path costs with fewer expanded cells.
+ */
+public class AStarPathFinderTest {
+
+	/** The number of queries per map. */
+	private static final int QUERIES = 50;
+
+	/**
+	 * Compares the path costs of the point to point search with the Dijkstra search.
+	 *
+	 * @return the expanded cells of the point to point search and of the Dijkstra search
+	 */
+	private long[] compare(GridMap map, AStarPathFinder astar) {
+
+		DijkstraPathFinder dijkstra = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+		Random random = new Random(7);
+		long[] expanded = new long[2];
+		for (int q = 0; q < QUERIES; q++) {
+			int s = map.randomCell(random);
+			int t = map.randomCell(random);
+			int sx = s % map.width;
+			int sy = s / map.width;
+			int tx = t % map.width;
+			int ty = t / map.width;
+
+			Path ref = dijkstra.findPath(sx, sy, tx, ty);
+			expanded[1] += dijkstra.getReexpanded();
+			Path path = astar.findPath(sx, sy, tx, ty);
+			expanded[0] += astar.getExpanded();
+			if (ref == null) {
+				assertNull(path);
+				continue;
+			}
+
+			float cost = dijkstra.getPathCost(tx, ty);
+			assertEquals("path cost " + q, cost, astar.getPathCost(tx, ty), 1e-3 * (1 + cost));
+			assertEquals("path cost of the steps " + q, cost, pathCost(map, path), 1e-3 * (1 + cost));
+		}
+		return expanded;
+	}
+
+	/**
+	 * Gets the cost of a path from its steps (distance plus cost of the entered cells).
+	 */
+	private static float pathCost(GridMap map, Path path) {
+
+		float c = 0;
+		for (int i = 1; i < path.getLength(); i++) {
+			int dx = path.getX(i) - path.getX(i - 1);
+			int dy = path.getY(i) - path.getY(i - 1);
+			assertTrue("adjacent steps", Math.abs(dx) <= 1 && Math.abs(dy) <= 1);
+			assertTrue("traversable steps", !map.blocked(path.getX(i), path.getY(i)));
+			c += (float) Math.sqrt(dx * dx + dy * dy) + map.getCost(0, 0, path.getX(i), path.getY(i));
+		}
+		return c;
+	}
+
+	@Test
+	public void aStarMatchesDijkstra() {
+
+		GridMap map = new GridMap(120, 100, 0.25, false, 1);
+		long[] expanded = compare(map, new AStarPathFinder(map, true));
+		assertTrue("A* expands fewer cells", expanded[0] < expanded[1]);
+	}
+
+	@Test
+	public void aStarMatchesDijkstraOnUniformCost() {
+
+		GridMap map = new GridMap(120, 100, 0.2, true, 2);
+		long[] expanded = compare(map, new AStarPathFinder(map, true));
+		assertTrue("A* expands fewer cells", expanded[0] < expanded[1] / 2);
+	}
+
+	@Test
+	public void jumpPointMatchesDijkstraOnUniformCost() {
+
+		GridMap map = new GridMap(120, 100, 0.2, true, 3);
+		long[] expanded = compare(map, new JumpPointPathFinder(map));
+		long[] astar = compare(map, new AStarPathFinder(map, true));
+		assertTrue("JPS expands fewer cells than A*", expanded[0] < astar[0]);
+	}
+
+	@Test
+	public void jumpPointMatchesDijkstraOnMixedCost() {
+
+		// any cost is allowed, the paths are still optimal
+		GridMap map = new GridMap(80, 60, 0.2, false, 4);
+		compare(map, new JumpPointPathFinder(map));
+	}
+}
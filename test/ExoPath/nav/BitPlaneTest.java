@@ -0,0 +1,172 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Point;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the bit plane fill and contour against the former point list fill and
+ * maximum minus source filter of the frontier detection.
+ */
+public class BitPlaneTest {
+
+	/** The grid sizes (around the word size). */
+	private static final int[][] SIZES = { { 1, 1 }, { 1, 7 }, { 5, 3 }, { 63, 20 }, { 64, 64 }, { 65, 31 }, { 130, 70 }, { 200, 200 } };
+
+	private final Random random = new Random(11);
+
+	/**
+	 * Creates a random plane with the given density of set cells.
+	 */
+	private boolean[][] randomCells(int width, int height, double density) {
+
+		boolean[][] cells = new boolean[height][width];
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				cells[y][x] = random.nextDouble() < density;
+		return cells;
+	}
+
+	/**
+	 * Creates a bit plane with the given cells.
+	 */
+	private static BitPlane plane(boolean[][] cells, int width, int height) {
+
+		BitPlane p = new BitPlane(width, height);
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				if (cells[y][x])
+					p.set(x, y);
+		return p;
+	}
+
+	/**
+	 * The former fill: a breadth first search over a point list, the start cell is set in any case.
+	 */
+	private static boolean[][] fillRef(boolean[][] barrier, int width, int height, int sx, int sy) {
+
+		boolean[][] filled = new boolean[height][width];
+		List<Point> plist = new LinkedList<Point>();
+		plist.add(new Point(sx, sy));
+		while (!plist.isEmpty()) {
+			Point pt = plist.remove(0);
+			filled[pt.y][pt.x] = true;
+			for (int x = -1; x < 2; x++) {
+				for (int y = -1; y < 2; y++) {
+					if (x == 0 && y == 0)
+						continue;
+					int cx = pt.x + x;
+					int cy = pt.y + y;
+					if (cx < 0 || cy < 0 || cx >= width || cy >= height)
+						continue;
+					if (barrier[cy][cx])
+						continue;
+					if (!filled[cy][cx]) {
+						plist.add(new Point(cx, cy));
+						filled[cy][cx] = true;
+					}
+				}
+			}
+		}
+		return filled;
+	}
+
+	/**
+	 * The former contour: the 3x3 maximum minus the source.
+	 */
+	private static boolean[][] contourRef(boolean[][] src, int width, int height) {
+
+		boolean[][] contour = new boolean[height][width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				boolean max = false;
+				for (int yy = Math.max(0, y - 1); yy < Math.min(height, y + 2); yy++)
+					for (int xx = Math.max(0, x - 1); xx < Math.min(width, x + 2); xx++)
+						max |= src[yy][xx];
+				contour[y][x] = max && !src[y][x];
+			}
+		}
+		return contour;
+	}
+
+	/**
+	 * Checks that a bit plane has the given cells.
+	 */
+	private static void assertCells(String msg, boolean[][] expected, BitPlane actual, int width, int height) {
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				assertEquals(msg + " " + x + "," + y, expected[y][x], actual.get(x, y));
+	}
+
+	@Test
+	public void fillMatchesPointListFill() {
+
+		for (int[] size : SIZES) {
+			int w = size[0];
+			int h = size[1];
+			for (double density : new double[] { 0, 0.2, 0.45, 0.6 }) {
+				boolean[][] cells = randomCells(w, h, density);
+				BitPlane barrier = plane(cells, w, h);
+				for (int q = 0; q < 3; q++) {
+					// the map corner (as the frontier detection) and random cells (also barrier cells)
+					int sx = q == 0 ? 0 : random.nextInt(w);
+					int sy = q == 0 ? 0 : random.nextInt(h);
+					BitPlane filled = new BitPlane(w, h);
+					filled.fill(sx, sy, barrier);
+					assertCells("fill " + w + "x" + h + " from " + sx + "," + sy,
+						fillRef(cells, w, h, sx, sy), filled, w, h);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void contourMatchesMaximumFilter() {
+
+		for (int[] size : SIZES) {
+			int w = size[0];
+			int h = size[1];
+			for (double density : new double[] { 0, 0.05, 0.5, 1 }) {
+				boolean[][] cells = randomCells(w, h, density);
+				BitPlane contour = new BitPlane(w, h);
+				contour.contour(plane(cells, w, h));
+				assertCells("contour " + w + "x" + h, contourRef(cells, w, h), contour, w, h);
+			}
+		}
+	}
+
+	@Test
+	public void frontierMatchesFormerDetection() {
+
+		// the unreachable area connected to the map corner and its contour
+		int w = 200;
+		int h = 200;
+		boolean[][] reach = new boolean[h][w];
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+				reach[y][x] = Math.hypot(x - 100, y - 100) < 60 + 10 * Math.sin(x * 0.3) && random.nextInt(20) != 0;
+
+		BitPlane unreach = new BitPlane(w, h);
+		unreach.fill(0, 0, plane(reach, w, h));
+		BitPlane frontier = new BitPlane(w, h);
+		frontier.contour(unreach);
+		assertCells("frontier", contourRef(fillRef(reach, w, h, 0, 0), w, h), frontier, w, h);
+	}
+}
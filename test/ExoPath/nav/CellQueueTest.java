@@ -0,0 +1,103 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the cell queues with a monotone sequence of updates (as done by the Dijkstra search)
+ * against a straight forward reference: the polled keys must be the lowest ones.
+ */
+public class CellQueueTest {
+
+	private static final int CELLS = 5000;
+
+	/**
+	 * Runs a monotone sequence of updates and polls.
+	 */
+	private static void check(CellQueue queue, long seed) {
+
+		Random random = new Random(seed);
+		float[] key = new float[CELLS];
+		Arrays.fill(key, Float.NaN); // not queued
+
+		for (int round = 0; round < 2; round++) { // the second round after a clear
+			queue.clear();
+			Arrays.fill(key, Float.NaN);
+			for (int i = 0; i < 10; i++)
+				update(queue, key, random.nextInt(CELLS), random.nextFloat() * 5);
+
+			float last = 0;
+			int polled = 0;
+			while (!queue.isEmpty()) {
+				int cell = queue.poll();
+				float k = key[cell];
+				assertFalse("polled cell was queued", Float.isNaN(k));
+				for (int c = 0; c < CELLS; c++)
+					assertTrue("lowest key", Float.isNaN(key[c]) || key[c] >= k);
+				assertTrue("monotone", k >= last);
+				key[cell] = Float.NaN;
+				assertFalse(queue.contains(cell));
+				last = k;
+
+				// new and decreased keys not below the polled one, some beyond the initial ring range
+				if (++polled < 3000) {
+					for (int i = random.nextInt(4); i > 0; i--) {
+						int c = random.nextInt(CELLS);
+						float nk = k + (random.nextInt(10) == 0 ? 40 * random.nextFloat() : 3 * random.nextFloat());
+						if (Float.isNaN(key[c]) || nk < key[c])
+							update(queue, key, c, nk);
+					}
+				}
+			}
+			for (int c = 0; c < CELLS; c++)
+				assertTrue("all polled", Float.isNaN(key[c]));
+		}
+	}
+
+	/**
+	 * Adds a cell or decreases its key in the queue and in the reference.
+	 */
+	private static void update(CellQueue queue, float[] key, int cell, float k) {
+
+		if (!Float.isNaN(key[cell]) && k >= key[cell])
+			return;
+		assertEquals(!Float.isNaN(key[cell]), queue.contains(cell));
+		queue.update(cell, k);
+		key[cell] = k;
+		assertTrue(queue.contains(cell));
+	}
+
+	@Test
+	public void heapQueue() {
+		check(new HeapCellQueue(CELLS), 1);
+	}
+
+	@Test
+	public void bucketQueue() {
+		check(new BucketCellQueue(CELLS, 1, 16), 1);
+	}
+
+	@Test
+	public void bucketQueueNarrowBuckets() {
+		// many buckets and a ring that has to grow
+		check(new BucketCellQueue(CELLS, 0.1f, 1), 2);
+	}
+}
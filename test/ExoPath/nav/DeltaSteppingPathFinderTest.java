@@ -0,0 +1,107 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.newdawn.slick.util.pathfinding.Path;
+
+/**
+ * Tests the delta stepping search against the Dijkstra search: the same path costs,
+ * distances and paths (both take the parent with the lowest index on equal costs),
+ * with one and with several threads.
+ */
+public class DeltaSteppingPathFinderTest {
+
+	/**
+	 * Compares all paths from some sources.
+	 */
+	private void compare(GridMap map, int threads, float delta) {
+
+		DijkstraPathFinder dijkstra = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+		DeltaSteppingPathFinder stepping = new DeltaSteppingPathFinder(map, true, threads);
+		stepping.setDelta(delta);
+		Random random = new Random(threads);
+		try {
+			for (int q = 0; q < 3; q++) {
+				int s = map.randomCell(random);
+				int sx = s % map.width;
+				int sy = s / map.width;
+				dijkstra.findPath(sx, sy, sx, sy); // the paths of all cells
+				stepping.findPath(sx, sy, sx, sy);
+
+				for (int y = 0; y < map.height; y++) {
+					for (int x = 0; x < map.width; x++) {
+						String at = x + "," + y + " from " + sx + "," + sy;
+						assertEquals("cost " + at, dijkstra.getPathCost(x, y), stepping.getPathCost(x, y), 0);
+						if (dijkstra.getPathCost(x, y) < Float.MAX_VALUE)
+							assertEquals("dist " + at, dijkstra.getPathDist(x, y), stepping.getPathDist(x, y), 1e-4);
+					}
+				}
+
+				// the paths of some cells (without map version each path is a new search)
+				for (int k = 0; k < 40; k++) {
+					int cell = random.nextInt(map.cost.length);
+					int tx = cell % map.width;
+					int ty = cell / map.width;
+					Path ref = dijkstra.findPath(sx, sy, tx, ty);
+					Path path = stepping.findPath(sx, sy, tx, ty);
+					if (ref == null) {
+						assertNull(path);
+						continue;
+					}
+					assertEquals("path length", ref.getLength(), path.getLength());
+					for (int i = 0; i < ref.getLength(); i++) {
+						assertEquals("path x", ref.getX(i), path.getX(i));
+						assertEquals("path y", ref.getY(i), path.getY(i));
+					}
+				}
+			}
+		}
+		finally {
+			stepping.shutdown();
+		}
+	}
+
+	@Test
+	public void singleThreadMatchesDijkstra() {
+		compare(new GridMap(150, 120, 0.25, false, 11), 1, 2);
+	}
+
+	@Test
+	public void parallelMatchesDijkstra() {
+		compare(new GridMap(150, 120, 0.25, false, 12), 4, 2);
+	}
+
+	@Test
+	public void parallelMatchesDijkstraOnUniformCost() {
+		// many paths of equal cost, the parents must still be the same
+		compare(new GridMap(150, 120, 0.2, true, 13), 4, 5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidDelta() {
+
+		DeltaSteppingPathFinder stepping = new DeltaSteppingPathFinder(new GridMap(4, 4, 0, true, 0), true, 1);
+		try {
+			stepping.setDelta(0);
+		}
+		finally {
+			stepping.shutdown();
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the Dijkstra path finder on random terrain maps.
+ */
+public class DijkstraPathFinderTest {
+
+	private static final int WIDTH = 120;
+
+	private static final int HEIGHT = 100;
+
+	private final Random random = new Random(5);
+
+	/**
+	 * Creates a map with random terrain values (all cells valid, some obstacles).
+	 */
+	private Map randomMap() {
+
+		Map map = new Map(WIDTH, HEIGHT);
+		byte[] row = new byte[WIDTH];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = (byte) random.nextInt(20);
+			map.setTerrainRow(Map.SLP, y, row);
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = (byte) random.nextInt(40);
+			map.setTerrainRow(Map.GRD, y, row);
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = (byte) random.nextInt(256);
+			map.setTerrainRow(Map.HAZ, y, row);
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = (byte) (random.nextInt(10) == 0 ? 255 : 0);
+			map.setTerrainRow(Map.OBS, y, row);
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = 2;
+			map.setTerrainRow(Map.VAL, y, row);
+		}
+		return map;
+	}
+
+	/**
+	 * Gets a random traversable cell.
+	 */
+	private int randomCell(Map map) {
+
+		int cell;
+		do {
+			cell = random.nextInt(WIDTH * HEIGHT);
+		} while (map.blocked(cell % WIDTH, cell / WIDTH));
+		return cell;
+	}
+
+	/**
+	 * Checks that two path finders have the same paths from a source.
+	 */
+	private static void assertSameField(DijkstraPathFinder expected, DijkstraPathFinder actual,
+			Map map, int sx, int sy) {
+
+		CellPath p0 = new CellPath();
+		CellPath p1 = new CellPath();
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				String at = x + "," + y;
+				boolean found = expected.findPath(sx, sy, x, y, p0);
+				assertEquals("reached " + at, found, actual.findPath(sx, sy, x, y, p1));
+				assertEquals("cost " + at, expected.getPathCost(x, y), actual.getPathCost(x, y), 0);
+				if (!found)
+					continue;
+				assertEquals("dist " + at, expected.getPathDist(x, y), actual.getPathDist(x, y), 0);
+				assertEquals("path length " + at, p0.getLength(), p1.getLength());
+				for (int i = 0; i < p0.getLength(); i++)
+					assertEquals("path " + at, p0.getCell(i), p1.getCell(i));
+			}
+		}
+	}
+
+	/**
+	 * Changes the obstacles (and optionally the hazard) of some random cells of a row.
+	 */
+	private void changeRow(Map map, int y, boolean hazard) {
+
+		byte[] obs = new byte[WIDTH];
+		byte[] haz = new byte[WIDTH];
+		map.getTerrainRow(Map.OBS, y, obs);
+		map.getTerrainRow(Map.HAZ, y, haz);
+		for (int i = 0; i < 6; i++) {
+			int x = random.nextInt(WIDTH);
+			obs[x] = (byte) (obs[x] == 0 ? 255 : 0);
+			if (hazard)
+				haz[random.nextInt(WIDTH)] = (byte) random.nextInt(256);
+		}
+		map.setTerrainRow(Map.OBS, y, obs);
+		map.setTerrainRow(Map.HAZ, y, haz);
+	}
+
+	/**
+	 * Repairs the paths from a source after random changes and compares them to a new search.
+	 */
+	private void checkRepair(Map map, boolean hazard) {
+
+		DijkstraPathFinder repaired = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+		CellPath path = new CellPath();
+		int s = randomCell(map);
+		int sx = s % WIDTH;
+		int sy = s / WIDTH;
+		repaired.findPath(sx, sy, sx, sy, path);
+		int full = repaired.getReexpanded();
+		int reexpanded = 0;
+
+		for (int round = 0; round < 10; round++) {
+			// some rows away from the source (a changed source is searched again)
+			for (int i = 0; i < 3; i++) {
+				int y;
+				do {
+					y = random.nextInt(HEIGHT);
+				} while (Math.abs(y - sy) < 3);
+				changeRow(map, y, hazard);
+			}
+
+			repaired.findPath(sx, sy, sx, sy, path);
+			reexpanded += repaired.getReexpanded();
+			DijkstraPathFinder fresh = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+			assertSameField(fresh, repaired, map, sx, sy);
+		}
+		assertTrue("repaired, not searched again", reexpanded < 10 * full / 2);
+	}
+
+	@Test
+	public void repairMatchesNewSearch() {
+		checkRepair(randomMap(), true);
+	}
+
+	@Test
+	public void repairMatchesNewSearchOnUniformCost() {
+
+		// just obstacles: many paths of equal cost, the repaired parents must be the same
+		Map map = randomMap();
+		byte[] zero = new byte[WIDTH];
+		for (int y = 0; y < HEIGHT; y++)
+			for (int prop : new int[] { Map.SLP, Map.GRD, Map.HAZ })
+				map.setTerrainRow(prop, y, zero);
+		checkRepair(map, false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyFieldCacheRejected() {
+		new DijkstraPathFinder(randomMap(), Integer.MAX_VALUE, true).setFieldCache(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeCorridorRejected() {
+		new DijkstraPathFinder(randomMap(), Integer.MAX_VALUE, true).setCorridor(-1);
+	}
+
+	@Test
+	public void noRepairSearchesAgain() {
+
+		Map map = randomMap();
+		DijkstraPathFinder finder = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+		finder.setRepair(false);
+		int s = randomCell(map);
+		int sx = s % WIDTH;
+		int sy = s / WIDTH;
+		CellPath path = new CellPath();
+		finder.findPath(sx, sy, sx, sy, path);
+		int full = finder.getReexpanded();
+
+		changeRow(map, (sy + HEIGHT / 2) % HEIGHT, true);
+		finder.findPath(sx, sy, sx, sy, path);
+		assertTrue("searched again", finder.getReexpanded() > full / 2);
+		assertSameField(new DijkstraPathFinder(map, Integer.MAX_VALUE, true), finder, map, sx, sy);
+	}
+
+	@Test
+	public void goalSearchMatchesFullSearch() {
+
+		// the goals settled by a search bounded with the map diagonal (as explore does it)
+		Map map = randomMap();
+		DijkstraPathFinder full = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+		DijkstraPathFinder bounded = new DijkstraPathFinder(map, WIDTH * HEIGHT, true);
+		int s = randomCell(map);
+		int sx = s % WIDTH;
+		int sy = s / WIDTH;
+		CellSet goals = new CellSet(WIDTH * HEIGHT);
+		for (int i = 0; i < 20; i++)
+			goals.add(randomCell(map));
+		bounded.findPaths(sx, sy, goals, Float.MAX_VALUE, (float) Math.hypot(WIDTH, HEIGHT));
+		full.findPath(sx, sy, sx, sy, new CellPath());
+		for (int i = 0; i < goals.size(); i++) {
+			int g = goals.get(i);
+			assertEquals("goal cost", full.getPathCost(g % WIDTH, g / WIDTH),
+				bounded.getPathCost(g % WIDTH, g / WIDTH), 0);
+		}
+
+		// the field stopped at the goals is not repaired as a complete field
+		changeRow(map, (sy + HEIGHT / 2) % HEIGHT, true);
+		assertSameField(new DijkstraPathFinder(map, Integer.MAX_VALUE, true), bounded, map, sx, sy);
+	}
+
+	@Test
+	public void coarseToFineCostNearOptimal() {
+
+		// with the default corridor the paths cost at most 5% more than the optimal paths
+		// (1% on average), with a corridor of 1 coarse cell some cost over 10% more
+
+		// random traversable terrain and some walls (instead of scattered obstacles, which
+		// would block almost all coarse cells)
+		Map map = randomMap();
+		byte[] row = new byte[WIDTH];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = (byte) random.nextInt(16);
+			map.setTerrainRow(Map.SLP, y, row);
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = (byte) random.nextInt(31);
+			map.setTerrainRow(Map.GRD, y, row);
+			for (int x = 0; x < WIDTH; x++)
+				row[x] = (byte) (x % 30 == 15 && y % 50 < 40 || y % 25 == 12 && x % 40 < 30 ? 255 : 0);
+			map.setTerrainRow(Map.OBS, y, row);
+		}
+		map.setPyramidLevels(4);
+
+		DijkstraPathFinder finder = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+		DijkstraPathFinder exact = new DijkstraPathFinder(map, Integer.MAX_VALUE, true);
+		CellPath path = new CellPath();
+		double sum = 0;
+		int n = 0;
+		for (int q = 0; q < 30; q++) {
+			int s = randomCell(map);
+			int t = randomCell(map);
+			boolean found = exact.findPath(s % WIDTH, s / WIDTH, t % WIDTH, t / WIDTH, path);
+			assertEquals("reached", found, finder.findPathCoarseToFine(s % WIDTH, s / WIDTH, t % WIDTH, t / WIDTH, path));
+			if (!found || s == t)
+				continue;
+			float best = exact.getPathCost(t % WIDTH, t / WIDTH);
+			float ratio = finder.getCoarseToFineCost() / best;
+			assertTrue("not below the optimal cost", ratio > 1 - 1e-5);
+			assertTrue("cost ratio " + ratio, ratio <= 1.05);
+			sum += ratio;
+			n++;
+		}
+		assertTrue("mean cost ratio " + sum / n, sum / n <= 1.01);
+	}
+
+	@Test
+	public void bucketQueueMatchesHeap() {
+
+		Map map = randomMap();
+		DijkstraPathFinder heap = new DijkstraPathFinder(map, Integer.MAX_VALUE, true, false);
+		DijkstraPathFinder buckets = new DijkstraPathFinder(map, Integer.MAX_VALUE, true, true);
+		for (int q = 0; q < 3; q++) {
+			int s = randomCell(map);
+			assertSameField(heap, buckets, map, s % WIDTH, s / WIDTH);
+		}
+	}
+
+	@Test
+	public void bucketQueueMatchesHeapOnUniformCost() {
+
+		// an empty map: all cells have the same cost, so many paths have equal costs
+		Map map = randomMap();
+		byte[] zero = new byte[WIDTH];
+		for (int y = 0; y < HEIGHT; y++)
+			for (int prop : new int[] { Map.SLP, Map.GRD, Map.HAZ, Map.OBS })
+				map.setTerrainRow(prop, y, zero);
+		assertTrue(map.isUniformCost(0, 0, WIDTH, HEIGHT));
+
+		DijkstraPathFinder heap = new DijkstraPathFinder(map, Integer.MAX_VALUE, true, false);
+		DijkstraPathFinder buckets = new DijkstraPathFinder(map, Integer.MAX_VALUE, true, true);
+		assertSameField(heap, buckets, map, WIDTH / 2, HEIGHT / 3);
+	}
+}
@@ -0,0 +1,101 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import java.util.Random;
+
+import org.newdawn.slick.util.pathfinding.PathFinderMap;
+
+/**
+ * A simple path finder map for the tests: a cost plane with random obstacles
+ * (the cost of a cell is the cost of entering it, as for Map).
+ */
+class GridMap implements PathFinderMap {
+
+	final int width;
+
+	final int height;
+
+	final float[] cost;
+
+	/**
+	 * Creates a map with random obstacles and a uniform cost of 0 or random costs.
+	 *
+	 * @param width the map width
+	 * @param height the map height
+	 * @param obstacles the fraction of blocked cells
+	 * @param uniform true for a uniform cost
+	 * @param seed the random seed
+	 */
+	GridMap(int width, int height, double obstacles, boolean uniform, long seed) {
+
+		this.width = width;
+		this.height = height;
+		cost = new float[width * height];
+		Random random = new Random(seed);
+		for (int i = 0; i < cost.length; i++)
+			cost[i] = random.nextDouble() < obstacles ? TerrainCostModel.BLOCKED
+					: uniform ? 0 : random.nextInt(8) * 0.25f;
+	}
+
+	/**
+	 * Gets a random traversable cell.
+	 */
+	int randomCell(Random random) {
+
+		int cell;
+		do {
+			cell = random.nextInt(cost.length);
+		} while (cost[cell] == TerrainCostModel.BLOCKED);
+		return cell;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public boolean blocked(int x, int y) {
+		return cost[y * width + x] == TerrainCostModel.BLOCKED;
+	}
+
+	@Override
+	public float getCost(int sx, int sy, int tx, int ty) {
+		return cost[ty * width + tx];
+	}
+
+	@Override
+	public void pathFinderVisited(int x, int y) {
+	}
+
+	@Override
+	public boolean visited(int x, int y) {
+		return false;
+	}
+
+	@Override
+	public int getPosX() {
+		return 0;
+	}
+
+	@Override
+	public int getPosY() {
+		return 0;
+	}
+}
@@ -0,0 +1,84 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Tests the pipeline stage threads.
+ */
+public class PipelineStageTest {
+
+	/**
+	 * A stage which records the processing threads and waits for a latch.
+	 */
+	private static class TestStage extends PipelineStage<Integer> {
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		volatile boolean finished = false;
+
+		volatile Thread lastThread;
+
+		TestStage() {
+			super("Test");
+		}
+
+		@Override
+		protected void process(Integer item) {
+			lastThread = Thread.currentThread();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {}
+			finished = true;
+		}
+	}
+
+	@Test
+	public void stopWaitsForTheItemInProcess() throws InterruptedException {
+
+		final TestStage stage = new TestStage();
+		stage.start();
+		stage.offer(1);
+		stage.started.await();
+
+		Thread stopper = new Thread() {
+			@Override
+			public void run() {
+				stage.stop();
+			}
+		};
+		stopper.start();
+		stopper.join(200);
+		assertTrue("stop returned during process", stopper.isAlive());
+
+		stage.release.countDown();
+		stopper.join(5000);
+		assertTrue("stop returned", !stopper.isAlive());
+		assertTrue("item finished", stage.finished);
+		assertTrue("stage thread", stage.lastThread != Thread.currentThread());
+
+		// after stop the items are processed directly
+		stage.offer(2);
+		assertEquals(Thread.currentThread(), stage.lastThread);
+		assertEquals(2, stage.getProcessed());
+	}
+}
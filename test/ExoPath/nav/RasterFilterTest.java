@@ -0,0 +1,197 @@
+/* . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+ * (c) Stefan Kral 2011 (http://www.redfibre.net/orbital)
+ *                     _   _ _       _
+ *             ___ ___| |_|_| |_ ___| |
+ * _______    | . |  _| . | |  _| .'| |     _____________
+ *       /____|___|_| |___|_|_| |__,|_|____/
+ *
+ * This program is free software and you are welcome to
+ * modify and/or redistribute it under the terms of the
+ * GNU General Public License http://www.gnu.org/licenses.
+ * . . . . . . . . . . . . . . . . . . . . . . . . . . . . */
+
+package exopath.nav;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the raster filters against straight forward reference implementations and
+ * the vectorised kernels against the scalar ones (run with --add-modules jdk.incubator.vector).
+ */
+public class RasterFilterTest {
+
+	/** The grid sizes (odd widths to get a scalar remainder). */
+	private static final int[][] SIZES = { { 1, 1 }, { 2, 3 }, { 37, 19 }, { 200, 150 } };
+
+	private final Random random = new Random(42);
+
+	private final RasterKernels scalar = new RasterKernels();
+
+	private final RasterKernels vector = new VectorKernels();
+
+	/**
+	 * Creates a random plane with some saturated cells.
+	 */
+	private byte[] plane(int width, int height) {
+
+		byte[] p = new byte[width * height];
+		for (int i = 0; i < p.length; i++)
+			p[i] = (byte) (random.nextInt(8) == 0 ? 255 : random.nextInt(256));
+		return p;
+	}
+
+	/**
+	 * The maximum of the window around a cell (cells outside are 0).
+	 */
+	private static byte dilateRef(byte[] src, int width, int height, int x, int y, int radius) {
+
+		int max = 0;
+		for (int yy = y - radius; yy <= y + radius; yy++)
+			for (int xx = x - radius; xx <= x + radius; xx++)
+				if (xx >= 0 && yy >= 0 && xx < width && yy < height)
+					max = Math.max(max, src[yy * width + xx] & 0xff);
+		return (byte) max;
+	}
+
+	/**
+	 * The blur of a cell (cells outside are 0).
+	 */
+	private static byte blurRef(byte[] src, int width, int height, int x, int y, int weight) {
+
+		int box = 0;
+		for (int yy = y - 1; yy <= y + 1; yy++)
+			for (int xx = x - 1; xx <= x + 1; xx++)
+				if (xx >= 0 && yy >= 0 && xx < width && yy < height)
+					box += src[yy * width + xx] & 0xff;
+		int v = (weight * box + (65536 - weight) * (src[y * width + x] & 0xff) + 32768) >> 16;
+		return (byte) Math.min(v, 255);
+	}
+
+	@Test
+	public void vectorKernelsAvailable() {
+		assertTrue(RasterKernels.create().isVectorized());
+	}
+
+	@Test
+	public void dilateMatchesReference() {
+
+		for (int[] size : SIZES) {
+			int w = size[0];
+			int h = size[1];
+			for (int radius = 1; radius <= 5; radius += 2) {
+				byte[] src = plane(w, h);
+				byte[] ref = new byte[w * h];
+				for (int y = 0; y < h; y++)
+					for (int x = 0; x < w; x++)
+						ref[y * w + x] = dilateRef(src, w, h, x, y, radius);
+
+				for (RasterKernels k : new RasterKernels[] { scalar, vector }) {
+					byte[] dst = new byte[w * h];
+					new RasterFilter(w, h, k).dilate(src, dst, radius);
+					assertArrayEquals("dilate " + w + "x" + h + " r" + radius, ref, dst);
+
+					// in place
+					byte[] p = src.clone();
+					new RasterFilter(w, h, k).dilate(p, p, radius);
+					assertArrayEquals("dilate in place " + w + "x" + h + " r" + radius, ref, p);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void dilateRegionWritesOnlyTheRegion() {
+
+		int w = 97;
+		int h = 61;
+		byte[] src = plane(w, h);
+		for (RasterKernels k : new RasterKernels[] { scalar, vector }) {
+			for (int radius = 1; radius <= 4; radius += 3) {
+				byte[] dst = new byte[w * h];
+				new RasterFilter(w, h, k).dilate(src, dst, radius, 10, 5, 80, 40);
+				for (int y = 0; y < h; y++) {
+					for (int x = 0; x < w; x++) {
+						boolean in = x >= 10 && x < 80 && y >= 5 && y < 40;
+						byte v = in ? dilateRef(src, w, h, x, y, radius) : 0;
+						assertTrue("region dilate " + x + "," + y, dst[y * w + x] == v);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void blurMatchesReference() {
+
+		for (int[] size : SIZES) {
+			int w = size[0];
+			int h = size[1];
+			byte[] src = plane(w, h);
+			for (int weight : new int[] { RasterFilter.BLUR_WEIGHT, 65536 }) {
+				byte[] ref = new byte[w * h];
+				for (int y = 0; y < h; y++)
+					for (int x = 0; x < w; x++)
+						ref[y * w + x] = blurRef(src, w, h, x, y, weight);
+
+				for (RasterKernels k : new RasterKernels[] { scalar, vector }) {
+					byte[] dst = new byte[w * h];
+					new RasterFilter(w, h, k).blur(src, dst, weight);
+					assertArrayEquals("blur " + w + "x" + h, ref, dst);
+
+					byte[] part = new byte[w * h];
+					RasterFilter f = new RasterFilter(w, h, k);
+					f.blur(src, part, weight, 0, 0, w, h / 2);
+					f.blur(src, part, weight, 0, h / 2, w, h);
+					assertArrayEquals("blur in parts " + w + "x" + h, ref, part);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void kernelsAreEqual() {
+
+		byte[] src = plane(300, 1);
+		int[] colors = new int[300];
+		for (int i = 0; i < colors.length; i++)
+			colors[i] = random.nextInt();
+		int[][] sums = new int[3][300];
+		for (int[] s : sums)
+			for (int i = 0; i < s.length; i++)
+				s[i] = random.nextInt(766);
+
+		// all lengths around the vector sizes and unaligned offsets
+		for (int n = 0; n < 140; n++) {
+			int a = 1 + n % 7;
+
+			byte[] d0 = new byte[300];
+			byte[] d1 = new byte[300];
+			scalar.max3(src, a - 1, a, a + 1, d0, a + 3, n);
+			vector.max3(src, a - 1, a, a + 1, d1, a + 3, n);
+			assertArrayEquals("max3 " + n, d0, d1);
+
+			int[] s0 = new int[300];
+			int[] s1 = new int[300];
+			scalar.sum3(src, a, s0, a + 2, n);
+			vector.sum3(src, a, s1, a + 2, n);
+			assertArrayEquals("sum3 " + n, s0, s1);
+
+			scalar.blur(sums[0], sums[1], sums[2], a + 1, src, d0, a, n, RasterFilter.BLUR_WEIGHT);
+			vector.blur(sums[0], sums[1], sums[2], a + 1, src, d1, a, n, RasterFilter.BLUR_WEIGHT);
+			assertArrayEquals("blur " + n, d0, d1);
+
+			int[] p0 = new int[300];
+			int[] p1 = new int[300];
+			for (int i = 0; i < p0.length; i++)
+				p0[i] = p1[i] = random.nextInt();
+			scalar.blend(p0, a, colors, a + 5, n);
+			vector.blend(p1, a, colors, a + 5, n);
+			assertArrayEquals("blend " + n, p0, p1);
+		}
+	}
+}